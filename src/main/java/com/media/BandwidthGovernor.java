@@ -0,0 +1,180 @@
+package com.media;
+
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 带宽控制器 - 全局令牌桶加可选的单主机令牌桶，所有并发下载共享
+ * 令牌桶按"理论到达时间"实现：每次写入用一次CAS预约时间片，超出速率时由写入线程自行休眠，
+ * 数据块之间没有锁；限速可在运行时随时调整，0表示不限速
+ */
+public class BandwidthGovernor {
+    // 可通过 -Dmedia.download.maxBytesPerSecond / -Dmedia.download.maxBytesPerSecondPerHost 设置初始值
+    private static final long DEFAULT_GLOBAL_LIMIT = Long.getLong("media.download.maxBytesPerSecond", 0);
+    private static final long DEFAULT_HOST_LIMIT = Long.getLong("media.download.maxBytesPerSecondPerHost", 0);
+
+    private static final long BURST_NANOS = 100_000_000L; // 空闲后允许的突发量（100毫秒的流量）
+
+    private static final BandwidthGovernor DEFAULT = new BandwidthGovernor(DEFAULT_GLOBAL_LIMIT, DEFAULT_HOST_LIMIT);
+
+    private final Bucket global;
+    private final ConcurrentMap<String, Bucket> hostBuckets = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Long> hostOverrides = new ConcurrentHashMap<>();
+    private volatile long defaultHostLimit;
+
+    private final AtomicLong throttledNanos = new AtomicLong();
+
+    /**
+     * 单个令牌桶
+     */
+    static final class Bucket {
+        private final AtomicLong theoreticalArrival = new AtomicLong(System.nanoTime());
+        private volatile long bytesPerSecond;
+
+        Bucket(long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        /**
+         * 预约 bytes 字节的发送时间
+         * @return 需要等待的纳秒数
+         */
+        long reserve(int bytes, long now) {
+            long rate = bytesPerSecond;
+            if (rate <= 0) {
+                return 0;
+            }
+            long cost = (long) (bytes * 1_000_000_000.0 / rate);
+            while (true) {
+                long current = theoreticalArrival.get();
+                long start = Math.max(current, now - BURST_NANOS);
+                long next = start + cost;
+                if (theoreticalArrival.compareAndSet(current, next)) {
+                    return Math.max(0, next - BURST_NANOS - now);
+                }
+            }
+        }
+
+        void setRate(long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        long getRate() {
+            return bytesPerSecond;
+        }
+    }
+
+    /**
+     * 一个下载对应的限速器，同时受全局和所属主机的令牌桶约束
+     */
+    public final class Throttle {
+        private final Bucket hostBucket;
+
+        private Throttle(Bucket hostBucket) {
+            this.hostBucket = hostBucket;
+        }
+
+        /**
+         * 写入 bytes 字节前调用，超出限速时阻塞当前线程
+         */
+        public void acquire(int bytes) throws InterruptedIOException {
+            long now = System.nanoTime();
+            long wait = Math.max(global.reserve(bytes, now), hostBucket.reserve(bytes, now));
+            if (wait <= 0) {
+                return;
+            }
+            throttledNanos.addAndGet(wait);
+            try {
+                Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("限速等待被中断");
+            }
+        }
+    }
+
+    public BandwidthGovernor(long globalBytesPerSecond, long defaultHostBytesPerSecond) {
+        this.global = new Bucket(globalBytesPerSecond);
+        this.defaultHostLimit = defaultHostBytesPerSecond;
+    }
+
+    /**
+     * 进程内共享的带宽控制器
+     */
+    public static BandwidthGovernor getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * 获取下载URL对应的限速器
+     */
+    public Throttle forUrl(String url) {
+        return new Throttle(hostBucket(hostOf(url)));
+    }
+
+    /**
+     * 设置全局限速（字节/秒），0表示不限速
+     */
+    public void setGlobalLimit(long bytesPerSecond) {
+        global.setRate(bytesPerSecond);
+    }
+
+    /**
+     * 设置未单独配置的主机的默认限速（字节/秒），0表示不限速
+     */
+    public void setDefaultHostLimit(long bytesPerSecond) {
+        defaultHostLimit = bytesPerSecond;
+        for (ConcurrentMap.Entry<String, Bucket> entry : hostBuckets.entrySet()) {
+            if (!hostOverrides.containsKey(entry.getKey())) {
+                entry.getValue().setRate(bytesPerSecond);
+            }
+        }
+    }
+
+    /**
+     * 单独设置某个主机的限速（字节/秒），0表示不限速
+     */
+    public void setHostLimit(String host, long bytesPerSecond) {
+        String key = host.toLowerCase();
+        hostOverrides.put(key, bytesPerSecond);
+        hostBucket(key).setRate(bytesPerSecond);
+    }
+
+    public long getGlobalLimit() {
+        return global.getRate();
+    }
+
+    /**
+     * 因限速累计休眠的时间（毫秒）
+     */
+    public long getThrottledMillis() {
+        return throttledNanos.get() / 1_000_000;
+    }
+
+    private Bucket hostBucket(String host) {
+        return hostBuckets.computeIfAbsent(host,
+                key -> new Bucket(hostOverrides.getOrDefault(key, defaultHostLimit)));
+    }
+
+    private static String hostOf(String url) {
+        try {
+            String host = URI.create(url).getHost();
+            return host != null ? host.toLowerCase() : "";
+        } catch (IllegalArgumentException e) {
+            return "";
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("限速: 全局 %s, 单主机默认 %s, 累计限速等待 %d 毫秒",
+                formatRate(global.getRate()), formatRate(defaultHostLimit), getThrottledMillis());
+    }
+
+    private static String formatRate(long bytesPerSecond) {
+        return bytesPerSecond > 0 ? bytesPerSecond / 1024 + " KB/s" : "不限";
+    }
+}
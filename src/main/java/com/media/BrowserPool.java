@@ -0,0 +1,291 @@
+package com.media;
+
+import io.github.bonigarcia.wdm.WebDriverManager;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.chrome.ChromeDriver;
+import org.openqa.selenium.chrome.ChromeOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 浏览器池 - 固定数量的Chrome实例在页面之间复用，省去每个页面启动和退出浏览器的开销
+ * 每个页面租用一个实例，归还时做健康检查并重置（关闭多余窗口、清除Cookie和本地存储、回到空白页）；
+ * 实例处理的页面数达到上限、页面内存超过阈值或失去响应时销毁，下次租用时重新启动
+ */
+public final class BrowserPool implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(BrowserPool.class);
+    private static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36";
+
+    // 可通过 -Dmedia.browser.poolSize / -Dmedia.browser.maxPages 等调整
+    public static final int DEFAULT_SIZE = Integer.getInteger("media.browser.poolSize", 2); // 浏览器实例数
+    private static final int MAX_PAGES = Integer.getInteger("media.browser.maxPages", 50); // 每个实例处理的页面数上限
+    private static final long MAX_HEAP_MB = Long.getLong("media.browser.maxHeapMB", 512); // 页面JS堆内存上限（MB）
+    private static final boolean HEADLESS = Boolean.parseBoolean(System.getProperty("media.browser.headless", "true"));
+    private static final int PAGE_LOAD_TIMEOUT = 60; // 页面加载超时（秒）
+
+    private static boolean driverReady;
+
+    private final Semaphore permits;
+    private final BlockingDeque<Browser> idle = new LinkedBlockingDeque<>();
+    private final Set<Browser> browsers = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    // 统计
+    private final AtomicLong launched = new AtomicLong();
+    private final AtomicLong leases = new AtomicLong();
+    private final AtomicLong retiredByPages = new AtomicLong();
+    private final AtomicLong retiredByMemory = new AtomicLong();
+    private final AtomicLong retiredUnhealthy = new AtomicLong();
+
+    /**
+     * 一个浏览器实例
+     */
+    private static final class Browser {
+        final WebDriver driver;
+        final String mainWindow;
+        int pages;
+
+        Browser(WebDriver driver) {
+            this.driver = driver;
+            this.mainWindow = driver.getWindowHandle();
+        }
+    }
+
+    /**
+     * 租用的浏览器，关闭即归还
+     */
+    public final class Lease implements AutoCloseable {
+        private final Browser browser;
+        private boolean released;
+
+        private Lease(Browser browser) {
+            this.browser = browser;
+        }
+
+        public WebDriver driver() {
+            return browser.driver;
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                release(browser);
+            }
+        }
+    }
+
+    public BrowserPool() {
+        this(DEFAULT_SIZE);
+    }
+
+    /**
+     * @param size 同时存在的浏览器实例数上限，实例在第一次租用时才启动
+     */
+    public BrowserPool(int size) {
+        this.permits = new Semaphore(Math.max(1, size));
+    }
+
+    /**
+     * 租用一个浏览器，没有空闲实例且已达上限时阻塞等待
+     */
+    public Lease acquire() throws InterruptedException {
+        if (closed) {
+            throw new IllegalStateException("浏览器池已关闭");
+        }
+        permits.acquire();
+        try {
+            Browser browser = idle.pollFirst();
+            if (browser == null) {
+                browser = launch();
+            }
+            leases.incrementAndGet();
+            return new Lease(browser);
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 关闭池中所有浏览器；仍在使用的实例在归还时关闭
+     */
+    @Override
+    public void close() {
+        closed = true;
+        Browser browser;
+        while ((browser = idle.pollFirst()) != null) {
+            quit(browser);
+        }
+    }
+
+    /**
+     * 统计：启动次数、租用次数、各原因的回收次数
+     */
+    public String metrics() {
+        return String.format("浏览器: 启动 %d 个, 租用 %d 次, 回收 %d 个 (页面数 %d, 内存 %d, 失效 %d), 运行中 %d 个",
+                launched.get(), leases.get(),
+                retiredByPages.get() + retiredByMemory.get() + retiredUnhealthy.get(),
+                retiredByPages.get(), retiredByMemory.get(), retiredUnhealthy.get(), browsers.size());
+    }
+
+    private void release(Browser browser) {
+        try {
+            browser.pages++;
+            if (closed) {
+                quit(browser);
+            } else if (!isHealthy(browser)) {
+                retiredUnhealthy.incrementAndGet();
+                logger.info("浏览器失去响应，销毁重建");
+                quit(browser);
+            } else if (browser.pages >= MAX_PAGES) {
+                retiredByPages.incrementAndGet();
+                logger.info("浏览器已处理 {} 个页面，销毁重建", browser.pages);
+                quit(browser);
+            } else if (heapMegabytes(browser) > MAX_HEAP_MB) {
+                retiredByMemory.incrementAndGet();
+                logger.info("浏览器页面内存超过 {} MB，销毁重建", MAX_HEAP_MB);
+                quit(browser);
+            } else if (!reset(browser)) {
+                retiredUnhealthy.incrementAndGet();
+                quit(browser);
+            } else {
+                // 后进先出，优先复用刚用过的实例
+                idle.offerFirst(browser);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private Browser launch() {
+        setupDriver();
+
+        // 配置Chrome选项
+        ChromeOptions options = new ChromeOptions();
+        if (HEADLESS) {
+            options.addArguments("--headless=new");
+            options.addArguments("--window-size=1920,1080");
+        } else {
+            options.addArguments("--start-maximized");
+        }
+        options.addArguments("--disable-blink-features=AutomationControlled");
+        options.addArguments("--disable-dev-shm-usage");
+        options.addArguments("user-agent=" + USER_AGENT);
+
+        WebDriver driver = new ChromeDriver(options);
+        driver.manage().timeouts().pageLoadTimeout(Duration.ofSeconds(PAGE_LOAD_TIMEOUT));
+        Browser browser = new Browser(driver);
+        browsers.add(browser);
+        launched.incrementAndGet();
+        logger.info("启动浏览器实例 ({})", browsers.size());
+        return browser;
+    }
+
+    /**
+     * 浏览器进程和页面是否仍然响应
+     */
+    private static boolean isHealthy(Browser browser) {
+        try {
+            return browser.driver.getWindowHandles().contains(browser.mainWindow)
+                    && ((JavascriptExecutor) browser.driver).executeScript("return 1") != null;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * 当前页面的JS堆大小（MB），浏览器不提供时返回0
+     */
+    private static long heapMegabytes(Browser browser) {
+        try {
+            Object used = ((JavascriptExecutor) browser.driver).executeScript(
+                    "return window.performance && performance.memory ? performance.memory.usedJSHeapSize : 0");
+            return used instanceof Number ? ((Number) used).longValue() / (1024 * 1024) : 0;
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    /**
+     * 清理上一个页面留下的状态，失败时返回false
+     */
+    private static boolean reset(Browser browser) {
+        WebDriver driver = browser.driver;
+        try {
+            // 关闭页面弹出的其他窗口
+            for (String handle : driver.getWindowHandles()) {
+                if (!handle.equals(browser.mainWindow)) {
+                    driver.switchTo().window(handle).close();
+                }
+            }
+            driver.switchTo().window(browser.mainWindow);
+
+            ((JavascriptExecutor) driver).executeScript(
+                    "try { localStorage.clear(); sessionStorage.clear(); } catch (e) {}");
+            if (driver instanceof ChromeDriver) {
+                // deleteAllCookies 只能删除当前域名的Cookie
+                ((ChromeDriver) driver).executeCdpCommand("Network.clearBrowserCookies", Collections.emptyMap());
+            } else {
+                driver.manage().deleteAllCookies();
+            }
+            driver.get("about:blank");
+            return true;
+        } catch (Exception e) {
+            logger.warn("重置浏览器失败: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private void quit(Browser browser) {
+        browsers.remove(browser);
+        try {
+            browser.driver.quit();
+        } catch (Exception e) {
+            logger.debug("关闭浏览器失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 准备ChromeDriver，进程内只执行一次
+     */
+    private static synchronized void setupDriver() {
+        if (driverReady) {
+            return;
+        }
+        System.out.println("初始化Selenium WebDriver...");
+
+        // 自动下载ChromeDriver - 指定版本为145
+        try {
+            WebDriverManager.chromedriver()
+                    .browserVersion("145")
+                    .setup();
+        } catch (Exception e) {
+            System.out.println("使用指定版本失败，尝试使用最新缓存的版本...");
+            try {
+                // 尝试使用缓存的最新版本
+                WebDriverManager.chromedriver()
+                        .forceDownload()
+                        .avoidResolutionCache()
+                        .setup();
+            } catch (Exception e2) {
+                System.out.println("版本指定失败，尝试自动检测系统ChromeDriver...");
+                // 最后尝试：使用系统上已有的ChromeDriver或浏览器版本
+                System.out.println("警告：WebDriverManager初始化失败 - " + e2.getMessage());
+                System.out.println("请确保已安装Chrome浏览器，并且系统PATH中包含chromedriver");
+                throw new RuntimeException("无法初始化WebDriver", e2);
+            }
+        }
+        driverReady = true;
+    }
+}
@@ -0,0 +1,69 @@
+package com.media;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * 边写边算的SHA-256 - 按文件顺序到达的数据块在写入时直接计算摘要，
+ * 乱序到达的部分（并发分段、续传前已写入的数据）在下载完成后从文件中补读
+ */
+public class ContentHasher {
+    private final MessageDigest digest;
+    private long hashedUpTo = 0;
+
+    public ContentHasher() {
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("JVM不支持SHA-256", e);
+        }
+    }
+
+    /**
+     * 数据块即将写入 position 处；恰好接在已计算部分之后时直接更新摘要
+     */
+    public synchronized void update(long position, ByteBuffer data) {
+        if (position == hashedUpTo) {
+            hashedUpTo += data.remaining();
+            digest.update(data);
+        }
+    }
+
+    /**
+     * 从文件中补读尚未计算的部分，返回十六进制摘要
+     */
+    public synchronized String finish(Path file) throws IOException {
+        DirectBufferPool pool = DirectBufferPool.shared();
+        ByteBuffer buffer = pool.acquire();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            while (hashedUpTo < size) {
+                buffer.clear();
+                int read = channel.read(buffer, hashedUpTo);
+                if (read < 0) {
+                    break;
+                }
+                buffer.flip();
+                digest.update(buffer);
+                hashedUpTo += read;
+            }
+        } finally {
+            pool.release(buffer);
+        }
+        return toHex(digest.digest());
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,378 @@
+package com.media;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 爬取日志 - 持久保存爬虫状态，进程被中断后下次运行从中断处继续
+ * 每个入队、完成、失败的页面追加一行到日志，日志超过上次快照条目数的两倍时把完整状态压缩为快照，写入的总量与记录数成线性；
+ * 压缩时只在锁内复制状态并换一个新日志，快照在锁外写入，抓取线程不必等待
+ * 启动时先读快照再重放日志，得到已入队和已完成的页面，只抓取未完成的部分
+ *
+ * 目录结构:
+ *   <输出目录>/.crawl/snapshot.json       - 压缩后的状态
+ *   <输出目录>/.crawl/journal.old.jsonl   - 正在压缩进快照的日志，快照写完后删除
+ *   <输出目录>/.crawl/journal.jsonl       - 之后追加的记录
+ */
+public final class CrawlJournal implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(CrawlJournal.class);
+    private static final Gson GSON = new Gson();
+    private static final String JOURNAL_DIR = ".crawl";
+
+    // 可通过 -Dmedia.crawl.snapshotEvery 调整
+    private static final int SNAPSHOT_EVERY = Integer.getInteger("media.crawl.snapshotEvery", 1000); // 压缩前日志至少的记录数
+    private static final int COMPACT_RATIO = 2; // 日志记录数超过快照条目数的倍数时压缩
+
+    private static final String QUEUED = "Q";
+    private static final String DONE = "D";
+    private static final String FAILED = "F";
+
+    private final Path snapshotFile;
+    private final Path journalFile;
+    private final Path oldJournalFile;
+    private final String key;
+    private final Map<String, Integer> queued = new LinkedHashMap<>(); // URL -> 深度，按入队顺序
+    private final Set<String> done = new HashSet<>();
+    private final Set<String> failed = new HashSet<>();
+    private final boolean resumed;
+    private Writer writer;
+    private int records; // 上次压缩之后写入的记录数
+    private int snapshotEntries; // 上次快照的条目数
+    private boolean compacting; // 快照正在锁外写入
+
+    /**
+     * 日志中的一行
+     */
+    private static class Record {
+        String op;
+        String url;
+        Integer depth;
+
+        Record(String op, String url, Integer depth) {
+            this.op = op;
+            this.url = url;
+            this.depth = depth;
+        }
+    }
+
+    /**
+     * 压缩后的完整状态
+     */
+    private static class Snapshot {
+        String key;
+        Map<String, Integer> queued;
+        List<String> done;
+        List<String> failed;
+    }
+
+    private CrawlJournal(Path dir, String key) throws IOException {
+        this.snapshotFile = dir.resolve("snapshot.json");
+        this.journalFile = dir.resolve("journal.jsonl");
+        this.oldJournalFile = dir.resolve("journal.old.jsonl");
+        this.key = key;
+        Files.createDirectories(dir);
+        this.resumed = load();
+        // 立即压缩：重放过的日志合并进快照，不同任务留下的旧状态被覆盖
+        writeSnapshot(snapshot());
+        Files.deleteIfExists(oldJournalFile);
+        writer = Files.newBufferedWriter(journalFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * 打开输出目录下的爬取日志
+     * @param key 爬取任务的标识（例如模式和起始URL），与日志中记录的不同时丢弃旧状态重新开始
+     */
+    public static CrawlJournal open(Path outputDir, String key) throws IOException {
+        return new CrawlJournal(outputDir.resolve(JOURNAL_DIR), key);
+    }
+
+    /**
+     * 是否从之前中断的爬取恢复
+     */
+    public boolean isResumed() {
+        return resumed;
+    }
+
+    /**
+     * 已入队过的全部页面（URL -> 深度）
+     */
+    public synchronized Map<String, Integer> queued() {
+        return new LinkedHashMap<>(queued);
+    }
+
+    /**
+     * 尚未完成的页面（URL -> 深度），包括上次失败的页面
+     */
+    public synchronized Map<String, Integer> unfinished() {
+        Map<String, Integer> result = new LinkedHashMap<>();
+        queued.forEach((url, depth) -> {
+            if (!done.contains(url)) {
+                result.put(url, depth);
+            }
+        });
+        return result;
+    }
+
+    public synchronized int doneCount() {
+        return done.size();
+    }
+
+    public void queued(String url, int depth) {
+        Snapshot snapshot;
+        synchronized (this) {
+            if (queued.putIfAbsent(url, depth) != null) {
+                return;
+            }
+            snapshot = append(new Record(QUEUED, url, depth));
+        }
+        compact(snapshot);
+    }
+
+    public void done(String url) {
+        Snapshot snapshot;
+        synchronized (this) {
+            failed.remove(url);
+            if (!done.add(url)) {
+                return;
+            }
+            snapshot = append(new Record(DONE, url, null));
+        }
+        compact(snapshot);
+    }
+
+    public void failed(String url) {
+        Snapshot snapshot;
+        synchronized (this) {
+            if (!failed.add(url)) {
+                return;
+            }
+            snapshot = append(new Record(FAILED, url, null));
+        }
+        compact(snapshot);
+    }
+
+    /**
+     * 爬取全部完成：删除日志，下次运行重新开始
+     */
+    public synchronized void finish() {
+        try {
+            awaitCompaction();
+            closeWriter();
+            Files.deleteIfExists(journalFile);
+            Files.deleteIfExists(oldJournalFile);
+            Files.deleteIfExists(snapshotFile);
+        } catch (IOException e) {
+            logger.warn("删除爬取日志失败: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            awaitCompaction();
+            closeWriter();
+        } catch (IOException e) {
+            logger.warn("关闭爬取日志失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 追加一条记录；写入失败只记录警告，不影响爬取。调用方持有锁
+     * @return 需要压缩时返回已复制的状态，由调用方在锁外写入；否则返回null
+     */
+    private Snapshot append(Record record) {
+        try {
+            if (writer == null) {
+                writer = Files.newBufferedWriter(journalFile, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            writer.write(GSON.toJson(record));
+            writer.write('\n');
+            // 交给操作系统即可：进程被杀死时不会丢失，不必每条记录都落盘
+            writer.flush();
+            if (++records >= Math.max(SNAPSHOT_EVERY, (long) snapshotEntries * COMPACT_RATIO)) {
+                return rotate();
+            }
+        } catch (IOException e) {
+            logger.warn("写入爬取日志失败: {}", e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * 复制当前状态，把日志改名为旧日志并开始新日志；调用方持有锁
+     * 上一次压缩还没完成时不压缩；上一次压缩失败、旧日志还在时不换日志，只重写快照后删除旧日志，
+     * 快照包含两个日志中的全部状态，之后重放当前日志也只会重复已有的状态。
+     * 无论哪种情况都重新计数，再次失败时要再写满一轮才重试
+     */
+    private Snapshot rotate() throws IOException {
+        if (compacting) {
+            return null;
+        }
+        records = 0;
+        Snapshot snapshot = snapshot();
+        if (!Files.exists(oldJournalFile)) {
+            closeWriter();
+            Files.move(journalFile, oldJournalFile);
+        }
+        compacting = true;
+        return snapshot;
+    }
+
+    /**
+     * 在锁外写入快照，然后删除旧日志；在两者之间中断时，重放旧日志也只会重复快照中已有的状态
+     */
+    private void compact(Snapshot snapshot) {
+        if (snapshot == null) {
+            return;
+        }
+        try {
+            writeSnapshot(snapshot);
+            Files.deleteIfExists(oldJournalFile);
+        } catch (IOException e) {
+            logger.warn("压缩爬取日志失败: {}", e.getMessage());
+        } finally {
+            synchronized (this) {
+                compacting = false;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * 复制当前状态；调用方持有锁
+     */
+    private Snapshot snapshot() {
+        Snapshot snapshot = new Snapshot();
+        snapshot.key = key;
+        snapshot.queued = new LinkedHashMap<>(queued);
+        snapshot.done = new ArrayList<>(done);
+        snapshot.failed = new ArrayList<>(failed);
+        snapshotEntries = queued.size() + done.size() + failed.size();
+        return snapshot;
+    }
+
+    /**
+     * 把快照原子地写入快照文件
+     */
+    private void writeSnapshot(Snapshot snapshot) throws IOException {
+        Path tmp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        Files.write(tmp, GSON.toJson(snapshot).getBytes(StandardCharsets.UTF_8));
+        try {
+            Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * 等待锁外的快照写入完成；调用方持有锁
+     */
+    private void awaitCompaction() {
+        boolean interrupted = false;
+        while (compacting) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void closeWriter() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    /**
+     * 读取快照并重放日志，属于同一任务且有记录时返回true
+     */
+    private boolean load() throws IOException {
+        if (!Files.exists(snapshotFile)) {
+            return false;
+        }
+        Snapshot snapshot;
+        try {
+            snapshot = GSON.fromJson(new String(Files.readAllBytes(snapshotFile), StandardCharsets.UTF_8), Snapshot.class);
+        } catch (JsonParseException e) {
+            logger.warn("爬取快照已损坏，重新开始: {}", e.getMessage());
+            return false;
+        }
+        if (snapshot == null || !key.equals(snapshot.key)) {
+            return false;
+        }
+        if (snapshot.queued != null) {
+            queued.putAll(snapshot.queued);
+        }
+        if (snapshot.done != null) {
+            done.addAll(snapshot.done);
+        }
+        if (snapshot.failed != null) {
+            failed.addAll(snapshot.failed);
+        }
+
+        // 先重放压缩中断时留下的旧日志，再重放之后的日志
+        for (Path file : new Path[]{oldJournalFile, journalFile}) {
+            if (!Files.exists(file)) {
+                continue;
+            }
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                for (String line; (line = reader.readLine()) != null; ) {
+                    replay(line);
+                }
+            }
+        }
+        logger.info("爬取日志已加载: 入队 {} 个页面，已完成 {} 个", queued.size(), done.size());
+        return !queued.isEmpty();
+    }
+
+    private void replay(String line) {
+        if (line.trim().isEmpty()) {
+            return;
+        }
+        Record record;
+        try {
+            record = GSON.fromJson(line, Record.class);
+        } catch (JsonParseException e) {
+            // 进程被中断时最后一行可能不完整
+            logger.warn("跳过损坏的日志行: {}", line);
+            return;
+        }
+        if (record == null || record.url == null) {
+            return;
+        }
+        if (QUEUED.equals(record.op)) {
+            queued.putIfAbsent(record.url, record.depth != null ? record.depth : 0);
+        } else if (DONE.equals(record.op)) {
+            done.add(record.url);
+            failed.remove(record.url);
+        } else if (FAILED.equals(record.op)) {
+            failed.add(record.url);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.media;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 直接内存缓冲池 - 复用固定大小的 DirectByteBuffer，避免每个数据块都分配堆数组并由JDK再复制到临时直接缓冲区
+ */
+public class DirectBufferPool {
+    public static final int BUFFER_SIZE = 256 * 1024; // 单个缓冲区大小
+    private static final int MAX_POOLED = 64; // 池中最多保留的缓冲区数量
+
+    private static final DirectBufferPool SHARED = new DirectBufferPool(BUFFER_SIZE, MAX_POOLED);
+
+    private final int bufferSize;
+    private final BlockingQueue<ByteBuffer> pool;
+
+    private final AtomicLong acquired = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+    private final AtomicLong allocated = new AtomicLong();
+    private final AtomicLong inUse = new AtomicLong();
+
+    public DirectBufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.pool = new ArrayBlockingQueue<>(maxPooled);
+    }
+
+    /**
+     * 进程内共享的缓冲池
+     */
+    public static DirectBufferPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * 借出一个已清空的缓冲区，池为空时新分配
+     */
+    public ByteBuffer acquire() {
+        acquired.incrementAndGet();
+        inUse.incrementAndGet();
+        ByteBuffer buffer = pool.poll();
+        if (buffer != null) {
+            reused.incrementAndGet();
+            buffer.clear();
+            return buffer;
+        }
+        allocated.incrementAndGet();
+        return ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    /**
+     * 归还缓冲区，池已满时直接丢弃交给GC回收
+     */
+    public void release(ByteBuffer buffer) {
+        inUse.decrementAndGet();
+        if (buffer.isDirect() && buffer.capacity() == bufferSize) {
+            buffer.clear();
+            pool.offer(buffer);
+        }
+    }
+
+    public long getAcquired() {
+        return acquired.get();
+    }
+
+    public long getReused() {
+        return reused.get();
+    }
+
+    public long getAllocated() {
+        return allocated.get();
+    }
+
+    public long getInUse() {
+        return inUse.get();
+    }
+
+    public int getPooled() {
+        return pool.size();
+    }
+
+    @Override
+    public String toString() {
+        long total = acquired.get();
+        double hitRate = total > 0 ? reused.get() * 100.0 / total : 0;
+        return String.format("缓冲池: 借出 %d 次, 复用率 %.1f%%, 新分配 %d 个, 使用中 %d 个, 空闲 %d 个",
+                total, hitRate, allocated.get(), inUse.get(), pool.size());
+    }
+}
@@ -0,0 +1,435 @@
+package com.media;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * 广度优先的网站爬虫 - 从起始页面出发，多个线程并发抓取页面，从每个抓取到的页面提取链接加入待抓取队列，
+ * 直到范围内的页面全部抓取完毕；URL先规范化（见 UrlCanonicalizer），已加入过队列的不再重复加入
+ * 可以从 sitemap 等来源预先加入页面，它们与起始页面上的链接同层，lastmod 越新越先抓取；
+ * 待抓取队列按深度排序，并发抓取时也先完成浅层页面；抓取到的页面经有界队列交给调用线程处理，处理慢时抓取线程阻塞等待
+ * 使用 CrawlJournal 时，入队、完成和失败的页面都写入日志，中断后再次运行只抓取未完成的页面
+ * fetcher 可以发送条件请求：返回304时使用它提供的上次的链接继续爬取，页面以 notModified 交给调用方；
+ * 对同一主机的请求由 HostPacer 控制节奏；被限流（429/503）或网络错误的页面按退避时间重新排队，而不是直接丢弃
+ */
+public final class DocCrawler {
+    // 可通过 -Dmedia.crawl.threads / -Dmedia.crawl.maxDepth / -Dmedia.crawl.maxPages / -Dmedia.crawl.maxRetries 调整
+    public static final int DEFAULT_THREADS = Integer.getInteger("media.crawl.threads", 4); // 并发抓取页面的线程数
+    private static final int MAX_DEPTH = Integer.getInteger("media.crawl.maxDepth", 10); // 距起始页面的最大链接深度
+    private static final int MAX_PAGES = Integer.getInteger("media.crawl.maxPages", 10000); // 最多抓取的页面数
+    private static final int MAX_RETRIES = Integer.getInteger("media.crawl.maxRetries", 5); // 被限流或网络错误时每个页面最多重试的次数
+    private static final int PAGE_QUEUE_CAPACITY = 16; // 已抓取待处理的页面队列容量
+    private static final long POLL_MILLIS = 200; // 抓取线程等待新链接的间隔
+
+    private final Function<String, FetchResult> fetcher;
+    private final BiFunction<Document, String, Collection<String>> linkExtractor;
+    private final Predicate<String> scope;
+    private final int threads;
+
+    private final PriorityBlockingQueue<Target> frontier = new PriorityBlockingQueue<>();
+    private final DelayQueue<Retry> retries = new DelayQueue<>(); // 等待退避结束后重新抓取的页面
+    private final HostPacer pacer = new HostPacer();
+    private final VisitedSet queued = new VisitedSet(); // 已入队URL的指纹
+    private final AtomicInteger discovered = new AtomicInteger();
+    private final AtomicInteger pending = new AtomicInteger(); // 已入队但尚未抓取完成的页面数，为0时爬取结束
+    private final AtomicLong sequence = new AtomicLong();
+    private CrawlJournal journal;
+    private Consumer<BiConsumer<String, Long>> seeds;
+    private boolean resumed;
+    private volatile boolean incomplete; // 有页面最终抓取失败，或有链接因深度、页面数上限被丢弃
+
+    /**
+     * 抓取到的页面；html为null且不是 notModified 时表示抓取失败
+     */
+    public static final class Page {
+        static final Page END = new Page(null, 0, null, null, null, null);
+
+        public final String url;
+        public final int depth;
+        public final String html;
+        public final Document doc; // 已解析的DOM，链接已在交给调用方之前提取
+        public final FetchResult fetch; // 抓取结果（验证器等），抓取失败时为null
+        public final List<String> links; // 页面上的链接（304时为上次记录的）
+        public final boolean notModified; // 服务器返回304，没有页面内容
+
+        Page(String url, int depth, String html, Document doc, FetchResult fetch, List<String> links) {
+            this.url = url;
+            this.depth = depth;
+            this.html = html;
+            this.doc = doc;
+            this.fetch = fetch;
+            this.links = links;
+            this.notModified = fetch != null && fetch.status == 304;
+        }
+    }
+
+    /**
+     * 一次抓取的结果：html为null表示失败，status为HTTP状态码（网络错误时为-1），
+     * 429/503、5xx和网络错误会重试，304表示页面未变化，其他状态直接记为失败
+     */
+    public static final class FetchResult {
+        public final int status;
+        public final String html;
+        public final String retryAfter; // Retry-After 响应头，可以为null
+        public final String etag; // 用于下次条件请求的 ETag / Last-Modified 响应头，可以为null
+        public final String lastModified;
+        public final Collection<String> links; // 304时上次记录的页面链接
+
+        private FetchResult(int status, String html, String retryAfter, String etag, String lastModified,
+                            Collection<String> links) {
+            this.status = status;
+            this.html = html;
+            this.retryAfter = retryAfter;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.links = links;
+        }
+
+        public FetchResult(int status, String html, String retryAfter) {
+            this(status, html, retryAfter, null, null, null);
+        }
+
+        public static FetchResult ok(int status, String html, String etag, String lastModified) {
+            return new FetchResult(status, html, null, etag, lastModified, null);
+        }
+
+        /**
+         * 304：页面未变化，links 为上次记录的页面链接
+         */
+        public static FetchResult notModified(Collection<String> links) {
+            return new FetchResult(304, null, null, null, null, links);
+        }
+
+        public static FetchResult failed(int status) {
+            return new FetchResult(status, null, null);
+        }
+    }
+
+    /**
+     * 待抓取的页面，按深度、再按最后修改时间（新的在前，未知的在后）、再按入队顺序排序
+     */
+    private static final class Target implements Comparable<Target> {
+        final String url;
+        final int depth;
+        final long lastModified; // 毫秒时间戳，未知时为 Long.MIN_VALUE
+        final long sequence;
+        final int attempt; // 已重试的次数
+
+        Target(String url, int depth, long lastModified, long sequence) {
+            this(url, depth, lastModified, sequence, 0);
+        }
+
+        Target(String url, int depth, long lastModified, long sequence, int attempt) {
+            this.url = url;
+            this.depth = depth;
+            this.lastModified = lastModified;
+            this.sequence = sequence;
+            this.attempt = attempt;
+        }
+
+        @Override
+        public int compareTo(Target other) {
+            if (depth != other.depth) {
+                return Integer.compare(depth, other.depth);
+            }
+            if (lastModified != other.lastModified) {
+                return Long.compare(other.lastModified, lastModified);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    /**
+     * 退避中的页面，到时间后从 DelayQueue 取出
+     */
+    private static final class Retry implements Delayed {
+        final Target target;
+        final long readyAt; // System.nanoTime()
+
+        Retry(Target target, long delayMillis) {
+            this.target = target;
+            this.readyAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(readyAt - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(readyAt, ((Retry) other).readyAt);
+        }
+    }
+
+    /**
+     * @param fetcher 获取页面，失败时返回带状态码的结果
+     * @param linkExtractor 从已解析的页面提取链接（绝对地址）
+     * @param scope 链接是否在爬取范围内
+     * @param threads 并发抓取页面的线程数
+     */
+    public DocCrawler(Function<String, FetchResult> fetcher, BiFunction<Document, String, Collection<String>> linkExtractor,
+                      Predicate<String> scope, int threads) {
+        this.fetcher = fetcher;
+        this.linkExtractor = linkExtractor;
+        this.scope = scope;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * 设置额外的页面来源（例如 sitemap）：爬取开始时调用一次，通过回调提供页面地址和 lastmod（可以为null），
+     * 页面按深度1加入待抓取队列；从爬取日志恢复时不再调用
+     */
+    public void seeds(Consumer<BiConsumer<String, Long>> seeds) {
+        this.seeds = seeds;
+    }
+
+    /**
+     * 从起始页面开始爬取，每个抓取到的页面在调用线程上交给 handler，全部页面及其后台任务完成后返回
+     * handler 返回该页面的后台任务（例如下载），任务结束后页面才记为完成；没有后台任务时返回null
+     * @param journal 爬取日志，有未完成的记录时从中恢复，爬取全部完成后删除；为null时不记录
+     */
+    public void crawl(String startUrl, CrawlJournal journal,
+                      Function<Page, CompletableFuture<?>> handler) throws InterruptedException {
+        this.journal = journal;
+        if (journal != null && journal.isResumed()) {
+            resumed = true;
+            resume(journal);
+        } else {
+            offer(startUrl, 0, null);
+            if (seeds != null) {
+                int before = discovered.get();
+                seeds.accept((url, lastModified) -> offer(url, 1, lastModified));
+                System.out.println("✓ 预先加入 " + (discovered.get() - before) + " 个页面");
+            }
+        }
+        BlockingQueue<Page> pages = new ArrayBlockingQueue<>(PAGE_QUEUE_CAPACITY);
+        startFetchers(pages);
+
+        List<CompletableFuture<?>> background = new ArrayList<>();
+        while (true) {
+            Page page = pages.take();
+            if (page == Page.END) {
+                break;
+            }
+            CompletableFuture<?> task = handler.apply(page);
+            if (page.html == null && !page.notModified) {
+                continue;
+            }
+            if (task == null) {
+                markDone(page.url);
+            } else {
+                background.add(task.whenComplete((result, e) -> markDone(page.url)));
+            }
+        }
+        CompletableFuture.allOf(background.toArray(new CompletableFuture<?>[0])).exceptionally(e -> null).join();
+
+        if (journal != null) {
+            journal.finish();
+        }
+    }
+
+    /**
+     * 从爬取日志恢复：已入队的页面不再重复入队，未完成的页面重新加入待抓取队列
+     */
+    private void resume(CrawlJournal journal) {
+        for (String url : journal.queued().keySet()) {
+            if (queued.add(url)) {
+                discovered.incrementAndGet();
+            }
+        }
+        Map<String, Integer> unfinished = journal.unfinished();
+        for (Map.Entry<String, Integer> entry : unfinished.entrySet()) {
+            pending.incrementAndGet();
+            frontier.add(new Target(entry.getKey(), entry.getValue(), Long.MIN_VALUE, sequence.getAndIncrement()));
+        }
+        System.out.println("✓ 从爬取日志恢复: 已完成 " + journal.doneCount() + " 个页面，待抓取 " + unfinished.size() + " 个");
+    }
+
+    private void markDone(String url) {
+        if (journal != null) {
+            journal.done(url);
+        }
+    }
+
+    /**
+     * 是否从爬取日志恢复（恢复时起始页面可能已在上次完成）
+     */
+    public boolean resumed() {
+        return resumed;
+    }
+
+    /**
+     * 对同一主机的请求节奏控制，可在爬取前设置 Crawl-delay
+     */
+    public HostPacer pacer() {
+        return pacer;
+    }
+
+    /**
+     * 是否完整爬取了范围内的页面：没有页面最终抓取失败，也没有链接因深度或页面数上限被丢弃
+     */
+    public boolean complete() {
+        return !incomplete;
+    }
+
+    /**
+     * 已发现（加入过待抓取队列）的页面数
+     */
+    public int discovered() {
+        return discovered.get();
+    }
+
+    private void startFetchers(BlockingQueue<Page> pages) {
+        AtomicInteger runningFetchers = new AtomicInteger(threads);
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    while (pending.get() > 0) {
+                        // 退避结束的页面优先于新页面
+                        Retry retry = retries.poll();
+                        Target target = retry != null ? retry.target : frontier.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                        if (target == null) {
+                            continue;
+                        }
+                        Page page = fetch(target);
+                        if (page == null) {
+                            continue; // 已重新排队，仍计入 pending
+                        }
+                        try {
+                            pages.put(page);
+                        } finally {
+                            // 子链接已先入队，计数不会在还有待抓取页面时降到0
+                            pending.decrementAndGet();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    if (runningFetchers.decrementAndGet() == 0) {
+                        try {
+                            pages.put(Page.END);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                }
+            }, "crawl-fetcher-" + (i + 1));
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * 抓取一个页面并把其中范围内的链接加入待抓取队列；页面重新排队等待重试时返回null
+     */
+    private Page fetch(Target target) throws InterruptedException {
+        // 主机在 Retry-After 期间暂停，页面不计重试次数直接推迟
+        long blocked = pacer.blockedMillis(target.url);
+        if (blocked > 0) {
+            retries.add(new Retry(target, blocked));
+            return null;
+        }
+
+        pacer.acquire(target.url);
+        long start = System.nanoTime();
+        FetchResult result;
+        try {
+            result = fetcher.apply(target.url);
+        } catch (RuntimeException e) {
+            System.err.println("✗ 抓取失败 (" + target.url + "): " + e.getMessage());
+            result = FetchResult.failed(-1);
+        }
+        if (result.html != null || (result.status == 304 && result.links != null)) {
+            pacer.onSuccess(target.url, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } else if (retried(target, result)) {
+            return null;
+        } else {
+            incomplete = true;
+            if (journal != null) {
+                journal.failed(target.url);
+            }
+            return new Page(target.url, target.depth, null, null, null, null);
+        }
+
+        Document doc = result.html != null ? Jsoup.parse(result.html, target.url) : null;
+        List<String> links = new ArrayList<>(doc != null ? linkExtractor.apply(doc, target.url) : result.links);
+        if (target.depth < MAX_DEPTH) {
+            for (String link : links) {
+                offer(link, target.depth + 1, null);
+            }
+        } else if (!links.isEmpty()) {
+            incomplete = true;
+        }
+        return new Page(target.url, target.depth, result.html, doc, result, links);
+    }
+
+    /**
+     * 被限流、服务端错误或网络错误时按退避时间重新排队，超过重试次数或其他错误时返回false
+     */
+    private boolean retried(Target target, FetchResult result) {
+        long delay;
+        if (result.status == 429 || result.status == 503) {
+            delay = pacer.onThrottled(target.url, result.retryAfter, target.attempt);
+        } else if (result.status == -1 || result.status >= 500) {
+            delay = HostPacer.backoffMillis(target.attempt);
+        } else {
+            return false;
+        }
+        if (target.attempt >= MAX_RETRIES) {
+            System.err.println("✗ 重试 " + MAX_RETRIES + " 次后仍失败 (" + result.status + "): " + target.url);
+            return false;
+        }
+        System.out.println("⏳ " + (result.status == -1 ? "网络错误" : "HTTP " + result.status) + "，"
+                + delay + " 毫秒后重试: " + target.url);
+        retries.add(new Retry(new Target(target.url, target.depth, target.lastModified, target.sequence,
+                target.attempt + 1), delay));
+        return true;
+    }
+
+    /**
+     * 把链接规范化后加入待抓取队列：无法规范化、范围外、已入队过或超过页面数上限的链接忽略
+     */
+    private void offer(String url, int depth, Long lastModified) {
+        url = UrlCanonicalizer.canonicalize(url);
+        if (url == null || (depth > 0 && !scope.test(url))) {
+            return;
+        }
+        long fingerprint = UrlCanonicalizer.fingerprint(url);
+        if (discovered.get() >= MAX_PAGES) {
+            if (!queued.contains(fingerprint)) {
+                incomplete = true;
+            }
+            return;
+        }
+        if (!queued.add(fingerprint)) {
+            return;
+        }
+        discovered.incrementAndGet();
+        if (journal != null) {
+            journal.queued(url, depth);
+        }
+        pending.incrementAndGet();
+        frontier.add(new Target(url, depth, lastModified != null ? lastModified : Long.MIN_VALUE,
+                sequence.getAndIncrement()));
+    }
+}
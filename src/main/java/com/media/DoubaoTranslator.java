@@ -33,11 +33,7 @@ public class DoubaoTranslator {
             throw new IllegalArgumentException("API密钥不能为空，请设置环境变量ARK_API_KEY");
         }
         this.apiKey = apiKey;
-        this.httpClient = new OkHttpClient.Builder()
-                .connectTimeout(30, java.util.concurrent.TimeUnit.SECONDS)
-                .readTimeout(60, java.util.concurrent.TimeUnit.SECONDS)
-                .writeTimeout(30, java.util.concurrent.TimeUnit.SECONDS)
-                .build();
+        this.httpClient = HttpClients.shared();
         this.gson = new GsonBuilder().setPrettyPrinting().create();
     }
     
@@ -178,12 +174,10 @@ public class DoubaoTranslator {
     }
     
     /**
-     * 关闭HTTP客户端
+     * 释放翻译器资源
+     * HTTP客户端是进程内共享的，这里不关闭它的调度器和连接池，否则会影响其他仍在使用的下载和翻译
      */
     public void close() {
-        if (httpClient != null) {
-            httpClient.dispatcher().executorService().shutdown();
-        }
     }
     
     // ==================== 测试方法 ====================
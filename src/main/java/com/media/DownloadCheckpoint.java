@@ -0,0 +1,150 @@
+package com.media;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 下载断点信息 - 以JSON形式保存在 .part 文件旁边
+ * 记录URL、ETag/Last-Modified 以及每个分段已落盘的位置，用于下次运行时续传
+ */
+class DownloadCheckpoint {
+    private static final Logger logger = LoggerFactory.getLogger(DownloadCheckpoint.class);
+    private static final Gson GSON = new Gson();
+
+    String url;
+    String etag;
+    String lastModified;
+    long totalBytes;
+    String contentType;
+    List<Segment> segments = new ArrayList<>();
+
+    // 保存序号，避免并发保存时旧快照覆盖新快照
+    private transient long snapshotSeq;
+    private transient long savedSeq;
+    private transient final Object saveLock = new Object();
+
+    /**
+     * 文件区段 [start, end]，position 为下一个待写入的字节
+     */
+    static class Segment {
+        long start;
+        long end;
+        long position;
+
+        Segment() {
+        }
+
+        Segment(long start, long end) {
+            this.start = start;
+            this.end = end;
+            this.position = start;
+        }
+
+        boolean isComplete() {
+            return position > end;
+        }
+    }
+
+    DownloadCheckpoint() {
+    }
+
+    DownloadCheckpoint(String url, String etag, String lastModified, long totalBytes) {
+        this.url = url;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.totalBytes = totalBytes;
+    }
+
+    /**
+     * 用于 If-Range 的校验值：优先使用强ETag，其次是Last-Modified，都没有时返回null
+     */
+    String validator() {
+        if (etag != null && !etag.startsWith("W/")) {
+            return etag;
+        }
+        return lastModified;
+    }
+
+    /**
+     * 断点是否属于该URL并且可以安全续传
+     */
+    boolean canResume(String url) {
+        return this.url != null && this.url.equals(url) && validator() != null
+                && totalBytes > 0 && segments != null && !segments.isEmpty();
+    }
+
+    /**
+     * 已写入的字节数
+     */
+    synchronized long committedBytes() {
+        long committed = 0;
+        for (Segment segment : segments) {
+            committed += segment.position - segment.start;
+        }
+        return committed;
+    }
+
+    /**
+     * 记录分段写入的新位置
+     */
+    synchronized void advance(Segment segment, long position) {
+        segment.position = position;
+    }
+
+    /**
+     * 先刷盘数据文件，再原子地写入断点文件，保证记录的位置都已真正落盘
+     */
+    void save(Path file, FileChannel data) throws IOException {
+        String json;
+        long seq;
+        synchronized (this) {
+            json = GSON.toJson(this);
+            seq = ++snapshotSeq;
+        }
+
+        synchronized (saveLock) {
+            if (seq <= savedSeq) {
+                return;
+            }
+            if (data != null && data.isOpen()) {
+                data.force(false);
+            }
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(tmp, json.getBytes(StandardCharsets.UTF_8));
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            savedSeq = seq;
+        }
+    }
+
+    /**
+     * 读取断点文件，不存在或已损坏时返回null
+     */
+    static DownloadCheckpoint load(Path file) {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            String json = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+            return GSON.fromJson(json, DownloadCheckpoint.class);
+        } catch (IOException | JsonParseException e) {
+            logger.warn("断点文件无法读取，将重新下载: {}", file, e);
+            return null;
+        }
+    }
+}
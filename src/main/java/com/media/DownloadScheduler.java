@@ -0,0 +1,239 @@
+package com.media;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * 下载调度器 - 有界工作线程池
+ * 同时限制全局并发数和单个主机的并发数，并在不同主机之间轮转调度，避免某个主机的大量任务饿死其他主机
+ */
+public class DownloadScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(DownloadScheduler.class);
+
+    // 可通过 -Dmedia.download.maxConcurrent / -Dmedia.download.maxPerHost 调整
+    private static final int DEFAULT_MAX_CONCURRENT = Integer.getInteger("media.download.maxConcurrent", 8);
+    private static final int DEFAULT_MAX_PER_HOST = Integer.getInteger("media.download.maxPerHost", 3);
+
+    private static volatile DownloadScheduler defaultScheduler;
+
+    private final int maxConcurrent;
+    private final int maxPerHost;
+    private final TaskQueue queue;
+    private final ExecutorService workers;
+    private final Map<String, Integer> activeByHost = new HashMap<>();
+    private int active = 0;
+
+    /**
+     * 待调度的下载任务
+     */
+    public static final class Task {
+        private final String host;
+        private final Runnable job;
+
+        Task(String host, Runnable job) {
+            this.host = host;
+            this.job = job;
+        }
+
+        public String getHost() {
+            return host;
+        }
+    }
+
+    /**
+     * 可插拔的任务队列
+     */
+    public interface TaskQueue {
+        void add(Task task);
+
+        /**
+         * 取出下一个可执行的任务
+         * @param hostAvailable 判断主机是否还有空闲的并发名额
+         * @return 可执行的任务，没有时返回null
+         */
+        Task poll(Predicate<String> hostAvailable);
+
+        int size();
+    }
+
+    /**
+     * 默认队列：每个主机一个FIFO队列，各主机之间轮转
+     */
+    public static class RoundRobinTaskQueue implements TaskQueue {
+        private final Map<String, Deque<Task>> tasksByHost = new HashMap<>();
+        private final Deque<String> hostOrder = new ArrayDeque<>();
+        private int size = 0;
+
+        @Override
+        public void add(Task task) {
+            Deque<Task> tasks = tasksByHost.get(task.getHost());
+            if (tasks == null) {
+                tasks = new ArrayDeque<>();
+                tasksByHost.put(task.getHost(), tasks);
+                hostOrder.addLast(task.getHost());
+            }
+            tasks.addLast(task);
+            size++;
+        }
+
+        @Override
+        public Task poll(Predicate<String> hostAvailable) {
+            for (int i = hostOrder.size(); i > 0; i--) {
+                String host = hostOrder.pollFirst();
+                if (!hostAvailable.test(host)) {
+                    hostOrder.addLast(host);
+                    continue;
+                }
+                Deque<Task> tasks = tasksByHost.get(host);
+                Task task = tasks.pollFirst();
+                if (tasks.isEmpty()) {
+                    tasksByHost.remove(host);
+                } else {
+                    hostOrder.addLast(host);
+                }
+                size--;
+                return task;
+            }
+            return null;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    public DownloadScheduler(int maxConcurrent, int maxPerHost) {
+        this(maxConcurrent, maxPerHost, new RoundRobinTaskQueue());
+    }
+
+    /**
+     * @param maxConcurrent 全局最大并发下载数
+     * @param maxPerHost 单个主机最大并发下载数
+     * @param queue 任务队列实现
+     */
+    public DownloadScheduler(int maxConcurrent, int maxPerHost, TaskQueue queue) {
+        if (maxConcurrent < 1 || maxPerHost < 1) {
+            throw new IllegalArgumentException("并发数必须大于0");
+        }
+        this.maxConcurrent = maxConcurrent;
+        this.maxPerHost = maxPerHost;
+        this.queue = queue;
+
+        AtomicInteger threadId = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(maxConcurrent, runnable -> {
+            Thread thread = new Thread(runnable, "download-worker-" + threadId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 获取进程内共享的默认调度器
+     */
+    public static DownloadScheduler getDefault() {
+        if (defaultScheduler == null) {
+            synchronized (DownloadScheduler.class) {
+                if (defaultScheduler == null) {
+                    defaultScheduler = new DownloadScheduler(DEFAULT_MAX_CONCURRENT, DEFAULT_MAX_PER_HOST);
+                }
+            }
+        }
+        return defaultScheduler;
+    }
+
+    /**
+     * 提交下载任务，按URL的主机名限制并发
+     */
+    public <T> CompletableFuture<T> submit(String url, Callable<T> job) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Task task = new Task(hostOf(url), () -> {
+            try {
+                future.complete(job.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+
+        synchronized (this) {
+            queue.add(task);
+        }
+        dispatch();
+        return future;
+    }
+
+    /**
+     * 等待所有任务结束（失败的任务由调用方在各自的future上处理）
+     */
+    public static void awaitAll(Collection<? extends CompletableFuture<?>> futures) {
+        for (CompletableFuture<?> future : futures) {
+            try {
+                future.join();
+            } catch (CompletionException | CancellationException e) {
+                // 由调用方处理
+            }
+        }
+    }
+
+    /**
+     * 关闭调度器，不再接受新任务
+     */
+    public void shutdown() {
+        workers.shutdown();
+    }
+
+    /**
+     * 在并发名额允许的范围内尽可能多地启动排队中的任务
+     */
+    private void dispatch() {
+        while (true) {
+            Task task;
+            synchronized (this) {
+                if (active >= maxConcurrent) {
+                    return;
+                }
+                task = queue.poll(host -> activeByHost.getOrDefault(host, 0) < maxPerHost);
+                if (task == null) {
+                    return;
+                }
+                active++;
+                activeByHost.merge(task.host, 1, Integer::sum);
+            }
+
+            Task started = task;
+            workers.execute(() -> {
+                try {
+                    started.job.run();
+                } finally {
+                    release(started.host);
+                }
+            });
+        }
+    }
+
+    private void release(String host) {
+        synchronized (this) {
+            active--;
+            if (activeByHost.merge(host, -1, Integer::sum) <= 0) {
+                activeByHost.remove(host);
+            }
+        }
+        dispatch();
+    }
+
+    private static String hostOf(String url) {
+        try {
+            String host = URI.create(url).getHost();
+            return host != null ? host.toLowerCase() : "";
+        } catch (IllegalArgumentException e) {
+            logger.debug("无法解析主机名: {}", url);
+            return "";
+        }
+    }
+}
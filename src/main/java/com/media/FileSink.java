@@ -0,0 +1,208 @@
+package com.media;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 下载输出目标 - 所有下载路径共用的文件写入端
+ * 从网络通道读满一个池化的直接缓冲区后再按偏移量写入文件，减少系统调用次数和堆内存复制；
+ * 已知大小时预分配文件，本地文件来源直接使用 transferFrom
+ */
+public class FileSink implements AutoCloseable {
+    // 全局写入统计
+    private static final AtomicLong bytesWritten = new AtomicLong();
+    private static final AtomicLong writeCalls = new AtomicLong();
+    private static final AtomicLong bytesTransferred = new AtomicLong();
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final DirectBufferPool pool;
+    private ContentHasher hasher;
+    private BandwidthGovernor.Throttle throttle;
+
+    /**
+     * 数据块写入回调
+     */
+    public interface ChunkListener {
+        /**
+         * @param position 写入后的文件位置
+         * @param bytes 本次写入的字节数
+         * @return 返回 false 时停止继续读取
+         */
+        boolean onChunk(long position, int bytes) throws IOException;
+    }
+
+    private FileSink(Path path, DirectBufferPool pool) throws IOException {
+        this.file = new RandomAccessFile(path.toFile(), "rw");
+        this.channel = file.getChannel();
+        this.pool = pool;
+    }
+
+    /**
+     * 打开文件，保留已有内容（用于续传）
+     */
+    public static FileSink open(Path path) throws IOException {
+        return new FileSink(path, DirectBufferPool.shared());
+    }
+
+    /**
+     * 打开文件并清空已有内容
+     */
+    public static FileSink create(Path path) throws IOException {
+        FileSink sink = open(path);
+        sink.file.setLength(0);
+        return sink;
+    }
+
+    /**
+     * 预分配文件大小，大小未知（小于0）时不做处理
+     */
+    public void preallocate(long size) throws IOException {
+        if (size >= 0 && file.length() != size) {
+            file.setLength(size);
+        }
+    }
+
+    /**
+     * 设置摘要计算器，写入的数据块会同时交给它计算SHA-256
+     */
+    public void setHasher(ContentHasher hasher) {
+        this.hasher = hasher;
+    }
+
+    /**
+     * 设置限速器，每个数据块写入前先向限速器申请配额
+     */
+    public void setThrottle(BandwidthGovernor.Throttle throttle) {
+        this.throttle = throttle;
+    }
+
+    /**
+     * 截断文件到指定大小（实际数据少于预分配大小时使用）
+     */
+    public void truncate(long size) throws IOException {
+        channel.truncate(size);
+    }
+
+    /**
+     * 从source读取数据，从position开始写入
+     * @param maxBytes 最多写入的字节数，小于0表示读到source结束
+     * @return 实际写入的字节数
+     */
+    public long transfer(ReadableByteChannel source, long position, long maxBytes, ChunkListener listener) throws IOException {
+        ByteBuffer buffer = pool.acquire();
+        long transferred = 0;
+        try {
+            boolean eof = false;
+            while (!eof && (maxBytes < 0 || transferred < maxBytes)) {
+                buffer.clear();
+                if (maxBytes >= 0) {
+                    buffer.limit((int) Math.min(buffer.capacity(), maxBytes - transferred));
+                }
+                // 读满缓冲区再写，使每次写入系统调用尽可能大
+                while (buffer.hasRemaining()) {
+                    if (source.read(buffer) < 0) {
+                        eof = true;
+                        break;
+                    }
+                }
+                buffer.flip();
+                int chunk = buffer.remaining();
+                if (chunk == 0) {
+                    break;
+                }
+                writeFully(buffer, position + transferred);
+                transferred += chunk;
+                if (listener != null && !listener.onChunk(position + transferred, chunk)) {
+                    break;
+                }
+            }
+        } finally {
+            pool.release(buffer);
+        }
+        return transferred;
+    }
+
+    /**
+     * 将已在内存中的数据块写入 position 处
+     * @return 写入的字节数
+     */
+    public int write(ByteBuffer data, long position) throws IOException {
+        int chunk = data.remaining();
+        writeFully(data, position);
+        return chunk;
+    }
+
+    /**
+     * 从本地文件通道零复制地传输数据
+     * @return 实际传输的字节数
+     */
+    public long transferFrom(FileChannel source, long size) throws IOException {
+        long position = 0;
+        while (position < size) {
+            long count = channel.transferFrom(source, position, size - position);
+            if (count <= 0) {
+                break;
+            }
+            position += count;
+        }
+        bytesTransferred.addAndGet(position);
+        return position;
+    }
+
+    /**
+     * 将数据刷到磁盘
+     */
+    public void force() throws IOException {
+        channel.force(false);
+    }
+
+    public FileChannel channel() {
+        return channel;
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        if (throttle != null) {
+            throttle.acquire(buffer.remaining());
+        }
+        if (hasher != null) {
+            hasher.update(position, buffer.duplicate());
+        }
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            int written = channel.write(buffer, offset);
+            offset += written;
+            writeCalls.incrementAndGet();
+        }
+        bytesWritten.addAndGet(offset - position);
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    /**
+     * 全局写入统计：写入字节数、写入调用次数、平均每次写入字节数、缓冲池使用情况以及限速情况
+     */
+    public static String metrics() {
+        long calls = writeCalls.get();
+        long bytes = bytesWritten.get();
+        return String.format("写入 %d 字节, %d 次写调用 (平均 %d 字节/次), transferFrom %d 字节; %s; %s",
+                bytes, calls, calls > 0 ? bytes / calls : 0, bytesTransferred.get(), DirectBufferPool.shared(),
+                BandwidthGovernor.getDefault());
+    }
+
+    public static long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    public static long getWriteCalls() {
+        return writeCalls.get();
+    }
+}
@@ -0,0 +1,567 @@
+package com.media;
+
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okio.BufferedSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * HLS下载器 - 解析 .m3u8 播放列表并把所有媒体分片合并为一个文件
+ * 主播放列表按码率/分辨率选择一路码流，音频单独分轨（EXT-X-MEDIA）时另存默认音轨；分片在固定大小的窗口内并发下载，按顺序写入输出文件，
+ * 内存中最多只保留窗口内的分片，支持 AES-128 加密、EXT-X-MAP 初始化分片和 EXT-X-BYTERANGE
+ */
+public class HlsDownloader {
+    private static final Logger logger = LoggerFactory.getLogger(HlsDownloader.class);
+    private static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36";
+
+    private static final int DEFAULT_WINDOW = 6; // 同时下载的分片数
+    private static final int MAX_SEGMENT_RETRIES = 3; // 单个分片最大重试次数
+    private static final int MAX_PLAYLIST_DEPTH = 3; // 主播放列表最多嵌套层数
+
+    // 码流选择（0表示不限制），例如 -Dmedia.hls.maxHeight=720
+    private static final long MAX_BANDWIDTH = Long.getLong("media.hls.maxBandwidth", 0);
+    private static final int MAX_HEIGHT = Integer.getInteger("media.hls.maxHeight", 0);
+
+    // 分片下载线程池（守护线程，进程退出时无需显式关闭）
+    private static final ExecutorService SEGMENT_POOL = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "hls-segment");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final OkHttpClient client;
+    private final int window;
+    private final Map<String, byte[]> keyCache = new ConcurrentHashMap<>();
+
+    /**
+     * 主播放列表中的一路码流
+     */
+    static class Variant {
+        String uri;
+        long bandwidth;
+        int height;
+        String audioGroup; // AUDIO 属性引用的 EXT-X-MEDIA 音频组，没有时为null
+    }
+
+    /**
+     * 加密信息
+     */
+    static class Key {
+        String method;
+        String uri;
+        byte[] iv; // 未指定时使用分片序号
+    }
+
+    /**
+     * 媒体分片（也用于表示 EXT-X-MAP 初始化分片）
+     */
+    static class Segment {
+        String uri;
+        long sequence;
+        long rangeStart = -1;
+        long rangeLength = -1;
+        Key key;
+        Segment map;
+    }
+
+    public HlsDownloader(OkHttpClient client) {
+        this(client, DEFAULT_WINDOW);
+    }
+
+    /**
+     * @param client HTTP客户端
+     * @param window 同时下载的分片数，也是内存中最多缓存的分片数
+     */
+    public HlsDownloader(OkHttpClient client, int window) {
+        this.client = client;
+        this.window = Math.max(1, window);
+    }
+
+    /**
+     * 返回每个请求（播放列表、密钥和分片）都附加指定请求头的下载器，与当前下载器共用连接池；headers为空时返回自身
+     */
+    public HlsDownloader withHeaders(Map<String, String> headers) {
+        if (headers == null || headers.isEmpty()) {
+            return this;
+        }
+        return new HlsDownloader(HttpClients.withHeaders(client, headers), window);
+    }
+
+    /**
+     * 判断URL是否是HLS播放列表
+     */
+    public static boolean isPlaylist(String url) {
+        String path = url.split("[?#]")[0].toLowerCase();
+        return path.endsWith(".m3u8") || path.endsWith(".m3u");
+    }
+
+    /**
+     * 下载HLS流并合并为一个文件
+     * 选中的码流引用了带URI的音频组（音视频分轨）时，默认音轨另存为 &lt;baseName&gt;.audio.&lt;扩展名&gt;，需要自行合并
+     * @param outputDir 输出目录
+     * @param baseName 不含扩展名的文件名，扩展名根据分片格式确定（.ts / .mp4 / .aac）
+     * @return 保存的（视频）文件路径
+     */
+    public Path download(String playlistUrl, Path outputDir, String baseName) throws IOException {
+        String url = playlistUrl;
+        String audioUrl = null;
+        List<String> lines = fetchPlaylist(url);
+        for (int depth = 0; isMasterPlaylist(lines); depth++) {
+            if (depth >= MAX_PLAYLIST_DEPTH) {
+                throw new IOException("主播放列表嵌套层数过多: " + playlistUrl);
+            }
+            Variant variant = selectVariant(parseVariants(lines, url));
+            logger.info("选择码流: {} (带宽 {}, 高度 {})", variant.uri, variant.bandwidth, variant.height);
+            if (variant.audioGroup != null) {
+                audioUrl = parseAudioRenditions(lines, url).get(variant.audioGroup);
+            }
+            url = variant.uri;
+            lines = fetchPlaylist(url);
+        }
+
+        Path target = downloadMedia(url, lines, outputDir, baseName);
+        if (audioUrl != null) {
+            try {
+                Path audio = downloadMedia(audioUrl, fetchPlaylist(audioUrl), outputDir, baseName + ".audio");
+                logger.warn("该码流的音频是单独的音轨，已另存为 {}，视频文件 {} 中没有声音，需要自行合并（例如用 ffmpeg）",
+                        audio, target);
+            } catch (IOException e) {
+                logger.warn("音轨下载失败，视频文件 {} 中没有声音: {} ({})", target, audioUrl, e.getMessage());
+            }
+        }
+        return target;
+    }
+
+    /**
+     * 下载媒体播放列表中的所有分片并合并为 &lt;baseName&gt;&lt;扩展名&gt;
+     */
+    private Path downloadMedia(String url, List<String> lines, Path outputDir, String baseName) throws IOException {
+        List<Segment> segments = parseSegments(lines, url);
+        if (segments.isEmpty()) {
+            throw new IOException("播放列表中没有媒体分片: " + url);
+        }
+
+        Path target = outputDir.resolve(baseName + containerExtension(segments));
+        Path partFile = target.resolveSibling(target.getFileName() + SegmentedDownloader.PART_SUFFIX);
+        // 与分段下载共用占用表，防止并发任务写入同一个 .part 文件
+        Path key = SegmentedDownloader.claim(target);
+        long totalBytes;
+        try {
+            totalBytes = writeSegments(url, segments, partFile);
+            try {
+                Files.move(partFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(partFile, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            SegmentedDownloader.release(key);
+        }
+        logger.info("HLS下载完成: {} ({} 个分片, {} 字节)", target, segments.size(), totalBytes);
+        return target;
+    }
+
+    /**
+     * 按窗口并发下载分片，按顺序写入文件
+     * 窗口队首的分片完成后立即写入并补充下一个分片，乱序完成的分片在内存中等待，
+     * 因此内存占用不超过窗口大小个分片
+     */
+    private long writeSegments(String url, List<Segment> segments, Path partFile) throws IOException {
+        Deque<Future<byte[]>> inFlight = new ArrayDeque<>();
+        int next = 0;
+        long position = 0;
+        Segment writtenMap = null;
+
+        try (FileSink sink = FileSink.create(partFile)) {
+            sink.setThrottle(BandwidthGovernor.getDefault().forUrl(url));
+            for (int i = 0; i < segments.size(); i++) {
+                while (next < segments.size() && inFlight.size() < window) {
+                    Segment segment = segments.get(next++);
+                    inFlight.add(SEGMENT_POOL.submit(() -> fetchSegment(segment)));
+                }
+
+                Segment segment = segments.get(i);
+                if (segment.map != null && segment.map != writtenMap) {
+                    position += sink.write(ByteBuffer.wrap(fetchSegment(segment.map)), position);
+                    writtenMap = segment.map;
+                }
+                byte[] data = await(inFlight.poll());
+                position += sink.write(ByteBuffer.wrap(data), position);
+
+                if ((i + 1) % 10 == 0 || i + 1 == segments.size()) {
+                    logger.debug("HLS分片进度: {}/{}", i + 1, segments.size());
+                }
+            }
+            sink.truncate(position);
+        } finally {
+            for (Future<byte[]> future : inFlight) {
+                future.cancel(false);
+            }
+        }
+        return position;
+    }
+
+    private static byte[] await(Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("分片下载失败", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("下载被中断");
+        }
+    }
+
+    /**
+     * 下载单个分片并解密，失败时重试
+     */
+    private byte[] fetchSegment(Segment segment) throws IOException {
+        IOException lastError = null;
+        for (int attempt = 1; attempt <= MAX_SEGMENT_RETRIES; attempt++) {
+            Request.Builder builder = newRequest(segment.uri);
+            if (segment.rangeStart >= 0) {
+                builder.header("Range", "bytes=" + segment.rangeStart + "-"
+                        + (segment.rangeStart + segment.rangeLength - 1));
+            }
+            try (Response response = client.newCall(builder.build()).execute()) {
+                if (!response.isSuccessful()) {
+                    throw new IOException("HTTP " + response.code() + ": " + segment.uri);
+                }
+                byte[] data = segment.rangeStart >= 0 ? readRange(response, segment) : response.body().bytes();
+                return segment.key != null ? decrypt(data, segment) : data;
+            } catch (IOException e) {
+                lastError = e;
+                logger.warn("分片下载失败 (第{}次): {} - {}", attempt, segment.uri, e.getMessage());
+            }
+        }
+        throw lastError;
+    }
+
+    /**
+     * 读取 EXT-X-BYTERANGE 指定的字节段：206 时响应体就是该段；
+     * 服务器忽略 Range 返回200整个文件时，从响应体中截取 [rangeStart, rangeStart + rangeLength)
+     */
+    private static byte[] readRange(Response response, Segment segment) throws IOException {
+        if (response.code() != 200 && response.code() != 206) {
+            throw new IOException("字节段请求应返回206，实际为 HTTP " + response.code() + ": " + segment.uri);
+        }
+        BufferedSource source = response.body().source();
+        try {
+            if (response.code() == 200) {
+                logger.debug("服务器不支持Range，从完整响应中截取分片: {}", segment.uri);
+                source.skip(segment.rangeStart);
+            }
+            return source.readByteArray(segment.rangeLength);
+        } catch (EOFException e) {
+            throw new IOException("分片字节段不完整: " + segment.uri, e);
+        }
+    }
+
+    private byte[] decrypt(byte[] data, Segment segment) throws IOException {
+        Key key = segment.key;
+        byte[] keyBytes = keyCache.get(key.uri);
+        if (keyBytes == null) {
+            try (Response response = client.newCall(newRequest(key.uri).build()).execute()) {
+                if (!response.isSuccessful()) {
+                    throw new IOException("获取密钥失败: HTTP " + response.code());
+                }
+                keyBytes = response.body().bytes();
+            }
+            keyCache.put(key.uri, keyBytes);
+        }
+
+        byte[] iv = key.iv;
+        if (iv == null) {
+            iv = ByteBuffer.allocate(16).putLong(8, segment.sequence).array();
+        }
+        try {
+            Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+            cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(keyBytes, "AES"), new IvParameterSpec(iv));
+            return cipher.doFinal(data);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("分片解密失败: " + segment.uri, e);
+        }
+    }
+
+    private List<String> fetchPlaylist(String url) throws IOException {
+        try (Response response = client.newCall(newRequest(url).build()).execute()) {
+            if (!response.isSuccessful()) {
+                throw new IOException("获取播放列表失败: HTTP " + response.code());
+            }
+            List<String> lines = new ArrayList<>();
+            for (String line : response.body().string().split("\r?\n")) {
+                line = line.trim();
+                if (!line.isEmpty()) {
+                    lines.add(line);
+                }
+            }
+            if (lines.isEmpty() || !lines.get(0).startsWith("#EXTM3U")) {
+                throw new IOException("不是有效的M3U8播放列表: " + url);
+            }
+            return lines;
+        }
+    }
+
+    private static boolean isMasterPlaylist(List<String> lines) {
+        for (String line : lines) {
+            if (line.startsWith("#EXT-X-STREAM-INF")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static List<Variant> parseVariants(List<String> lines, String baseUrl) throws IOException {
+        List<Variant> variants = new ArrayList<>();
+        for (int i = 0; i < lines.size() - 1; i++) {
+            String line = lines.get(i);
+            if (!line.startsWith("#EXT-X-STREAM-INF:")) {
+                continue;
+            }
+            Map<String, String> attributes = parseAttributes(line.substring(line.indexOf(':') + 1));
+            Variant variant = new Variant();
+            variant.uri = resolve(baseUrl, lines.get(i + 1));
+            variant.bandwidth = parseLong(attributes.get("BANDWIDTH"), 0);
+            String resolution = attributes.get("RESOLUTION");
+            if (resolution != null && resolution.contains("x")) {
+                variant.height = (int) parseLong(resolution.substring(resolution.indexOf('x') + 1), 0);
+            }
+            variant.audioGroup = attributes.get("AUDIO");
+            variants.add(variant);
+        }
+        if (variants.isEmpty()) {
+            throw new IOException("主播放列表中没有可用码流: " + baseUrl);
+        }
+        return variants;
+    }
+
+    /**
+     * 解析 EXT-X-MEDIA 中的音频组：组ID -> 音轨播放列表地址，优先 DEFAULT=YES 的音轨
+     * 没有URI的音轨表示音频已混在码流中，不列出
+     */
+    static Map<String, String> parseAudioRenditions(List<String> lines, String baseUrl) throws IOException {
+        Map<String, String> renditions = new HashMap<>();
+        Set<String> defaults = new HashSet<>();
+        for (String line : lines) {
+            if (!line.startsWith("#EXT-X-MEDIA:")) {
+                continue;
+            }
+            Map<String, String> attributes = parseAttributes(line.substring(line.indexOf(':') + 1));
+            String group = attributes.get("GROUP-ID");
+            String uri = attributes.get("URI");
+            if (!"AUDIO".equals(attributes.get("TYPE")) || group == null || uri == null || defaults.contains(group)) {
+                continue;
+            }
+            boolean isDefault = "YES".equals(attributes.get("DEFAULT"));
+            if (isDefault || !renditions.containsKey(group)) {
+                renditions.put(group, resolve(baseUrl, uri));
+            }
+            if (isDefault) {
+                defaults.add(group);
+            }
+        }
+        return renditions;
+    }
+
+    /**
+     * 在限制范围内选择带宽最高的码流，都超出限制时选择带宽最低的
+     */
+    static Variant selectVariant(List<Variant> variants) {
+        Variant best = null;
+        Variant lowest = null;
+        for (Variant variant : variants) {
+            if (lowest == null || variant.bandwidth < lowest.bandwidth) {
+                lowest = variant;
+            }
+            boolean withinLimit = (MAX_BANDWIDTH <= 0 || variant.bandwidth <= MAX_BANDWIDTH)
+                    && (MAX_HEIGHT <= 0 || variant.height <= MAX_HEIGHT);
+            if (withinLimit && (best == null || variant.bandwidth > best.bandwidth)) {
+                best = variant;
+            }
+        }
+        return best != null ? best : lowest;
+    }
+
+    static List<Segment> parseSegments(List<String> lines, String baseUrl) throws IOException {
+        List<Segment> segments = new ArrayList<>();
+        Map<String, Long> rangeEnds = new HashMap<>(); // 省略偏移量的BYTERANGE接在同一URI上一段之后
+        long sequence = 0;
+        Key key = null;
+        Segment map = null;
+        long rangeLength = -1;
+        long rangeOffset = -1;
+        boolean ended = false;
+
+        for (String line : lines) {
+            if (line.startsWith("#EXT-X-MEDIA-SEQUENCE:")) {
+                sequence = parseLong(line.substring(line.indexOf(':') + 1), 0);
+            } else if (line.startsWith("#EXT-X-KEY:")) {
+                key = parseKey(parseAttributes(line.substring(line.indexOf(':') + 1)), baseUrl);
+            } else if (line.startsWith("#EXT-X-MAP:")) {
+                Map<String, String> attributes = parseAttributes(line.substring(line.indexOf(':') + 1));
+                map = new Segment();
+                map.uri = resolve(baseUrl, attributes.get("URI"));
+                String range = attributes.get("BYTERANGE");
+                if (range != null) {
+                    String[] parts = range.split("@");
+                    map.rangeLength = parseLong(parts[0], -1);
+                    map.rangeStart = parts.length > 1 ? parseLong(parts[1], 0) : 0;
+                }
+            } else if (line.startsWith("#EXT-X-BYTERANGE:")) {
+                String[] parts = line.substring(line.indexOf(':') + 1).split("@");
+                rangeLength = parseLong(parts[0], -1);
+                rangeOffset = parts.length > 1 ? parseLong(parts[1], -1) : -1;
+            } else if (line.startsWith("#EXT-X-ENDLIST")) {
+                ended = true;
+            } else if (!line.startsWith("#")) {
+                Segment segment = new Segment();
+                segment.uri = resolve(baseUrl, line);
+                segment.sequence = sequence++;
+                segment.key = key;
+                segment.map = map;
+                if (rangeLength >= 0) {
+                    segment.rangeStart = rangeOffset >= 0 ? rangeOffset : rangeEnds.getOrDefault(segment.uri, 0L);
+                    segment.rangeLength = rangeLength;
+                    rangeEnds.put(segment.uri, segment.rangeStart + rangeLength);
+                }
+                segments.add(segment);
+                rangeLength = -1;
+                rangeOffset = -1;
+            }
+        }
+
+        if (!ended) {
+            logger.warn("播放列表没有 EXT-X-ENDLIST（可能是直播流），只下载当前列出的 {} 个分片", segments.size());
+        }
+        return segments;
+    }
+
+    private static Key parseKey(Map<String, String> attributes, String baseUrl) throws IOException {
+        String method = attributes.getOrDefault("METHOD", "NONE");
+        if ("NONE".equals(method)) {
+            return null;
+        }
+        if (!"AES-128".equals(method)) {
+            throw new IOException("不支持的加密方式: " + method);
+        }
+        Key key = new Key();
+        key.method = method;
+        key.uri = resolve(baseUrl, attributes.get("URI"));
+        String iv = attributes.get("IV");
+        if (iv != null) {
+            key.iv = parseIv(iv);
+        }
+        return key;
+    }
+
+    /**
+     * 解析属性列表，例如 BANDWIDTH=1280000,CODECS="avc1.4d401f,mp4a.40.2"
+     */
+    static Map<String, String> parseAttributes(String text) {
+        Map<String, String> attributes = new HashMap<>();
+        int i = 0;
+        while (i < text.length()) {
+            int eq = text.indexOf('=', i);
+            if (eq < 0) {
+                break;
+            }
+            String name = text.substring(i, eq).trim();
+            String value;
+            int end;
+            if (eq + 1 < text.length() && text.charAt(eq + 1) == '"') {
+                int close = text.indexOf('"', eq + 2);
+                if (close < 0) {
+                    close = text.length();
+                }
+                value = text.substring(eq + 2, close);
+                end = text.indexOf(',', close);
+            } else {
+                end = text.indexOf(',', eq);
+                value = text.substring(eq + 1, end < 0 ? text.length() : end).trim();
+            }
+            attributes.put(name, value);
+            if (end < 0) {
+                break;
+            }
+            i = end + 1;
+        }
+        return attributes;
+    }
+
+    private static byte[] parseIv(String hex) throws IOException {
+        String digits = hex.startsWith("0x") || hex.startsWith("0X") ? hex.substring(2) : hex;
+        if (digits.length() != 32) {
+            throw new IOException("无效的IV: " + hex);
+        }
+        byte[] iv = new byte[16];
+        for (int i = 0; i < 16; i++) {
+            iv[i] = (byte) Integer.parseInt(digits.substring(i * 2, i * 2 + 2), 16);
+        }
+        return iv;
+    }
+
+    /**
+     * 根据分片格式确定输出扩展名
+     */
+    private static String containerExtension(List<Segment> segments) {
+        Segment first = segments.get(0);
+        if (first.map != null) {
+            return ".mp4";
+        }
+        String path = first.uri.split("[?#]")[0].toLowerCase();
+        if (path.endsWith(".m4s") || path.endsWith(".mp4")) {
+            return ".mp4";
+        }
+        if (path.endsWith(".aac")) {
+            return ".aac";
+        }
+        return ".ts";
+    }
+
+    private static String resolve(String baseUrl, String uri) throws IOException {
+        HttpUrl base = HttpUrl.parse(baseUrl);
+        HttpUrl resolved = base != null && uri != null ? base.resolve(uri) : null;
+        if (resolved == null) {
+            throw new IOException("无法解析地址: " + uri);
+        }
+        return resolved.toString();
+    }
+
+    private static long parseLong(String value, long defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static Request.Builder newRequest(String url) {
+        return new Request.Builder()
+                .url(url)
+                .header("User-Agent", USER_AGENT);
+    }
+}
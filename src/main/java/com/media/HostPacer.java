@@ -0,0 +1,185 @@
+package com.media;
+
+import java.net.URI;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单主机请求节奏控制 - 爬虫对同一主机的请求按间隔发出，间隔随主机的反馈自动调整：
+ * 请求成功时逐步缩短（加性减小），遇到 429/503 时加倍（乘性增大）并在 Retry-After 期间暂停该主机，
+ * 响应延迟明显高于该主机的基线时也会放慢；间隔不小于 robots.txt 的 Crawl-delay
+ * 与 BandwidthGovernor 一样按"理论到达时间"预约时间片，请求之间没有锁
+ */
+public final class HostPacer {
+    // 可通过 -Dmedia.crawl.minIntervalMillis / -Dmedia.crawl.maxIntervalMillis 调整
+    private static final long MIN_INTERVAL_MILLIS = Long.getLong("media.crawl.minIntervalMillis", 0); // 同一主机两次请求的最小间隔
+    private static final long MAX_INTERVAL_MILLIS = Long.getLong("media.crawl.maxIntervalMillis", 30_000); // 自动放慢的间隔上限
+    private static final long MAX_RETRY_AFTER_MILLIS = 10 * 60 * 1000; // Retry-After 最多遵守10分钟
+    private static final long THROTTLE_START_MILLIS = 500; // 第一次被限流后的最小间隔
+    private static final long DECREASE_STEP_MILLIS = 10; // 每次成功后间隔缩短的量
+    private static final double SLOW_LATENCY_FACTOR = 2.0; // 延迟超过基线的倍数时放慢
+    private static final double LATENCY_WEIGHT = 0.2; // 延迟滑动平均的权重
+
+    private final ConcurrentMap<String, Host> hosts = new ConcurrentHashMap<>();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong waitedNanos = new AtomicLong();
+
+    /**
+     * 一个主机的节奏状态
+     */
+    private static final class Host {
+        final AtomicLong nextSlot = new AtomicLong(System.nanoTime()); // 下一个请求可以发出的时间
+        volatile long floorNanos = TimeUnit.MILLISECONDS.toNanos(MIN_INTERVAL_MILLIS); // 间隔下限（含 Crawl-delay）
+        volatile long intervalNanos = floorNanos;
+        volatile long blockedUntil; // Retry-After 结束的时间，0 表示没有暂停
+        double latencyAverage; // 延迟滑动平均（毫秒），在 synchronized 中更新
+        double latencyBaseline = Double.MAX_VALUE; // 观察到的最低平均延迟
+    }
+
+    /**
+     * 设置主机的 Crawl-delay（毫秒），小于0时忽略
+     * @param url 主机上任意一个URL
+     */
+    public void setCrawlDelay(String url, long millis) {
+        if (millis < 0) {
+            return;
+        }
+        Host host = host(url);
+        host.floorNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(MIN_INTERVAL_MILLIS), TimeUnit.MILLISECONDS.toNanos(millis));
+        host.intervalNanos = Math.max(host.intervalNanos, host.floorNanos);
+    }
+
+    /**
+     * 主机因 Retry-After 还需暂停的毫秒数，没有暂停时返回0
+     */
+    public long blockedMillis(String url) {
+        long until = host(url).blockedUntil;
+        long remaining = until - System.nanoTime();
+        return until != 0 && remaining > 0 ? TimeUnit.NANOSECONDS.toMillis(remaining) + 1 : 0;
+    }
+
+    /**
+     * 预约主机的下一个时间片，需要时休眠到该时间
+     */
+    public void acquire(String url) throws InterruptedException {
+        Host host = host(url);
+        long now = System.nanoTime();
+        while (true) {
+            long current = host.nextSlot.get();
+            long slot = Math.max(current, now);
+            if (host.nextSlot.compareAndSet(current, slot + host.intervalNanos)) {
+                long wait = slot - now;
+                if (wait > 0) {
+                    waitedNanos.addAndGet(wait);
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * 请求成功：间隔缩短一步；延迟明显高于基线时反而放慢
+     */
+    public void onSuccess(String url, long latencyMillis) {
+        Host host = host(url);
+        boolean slow;
+        synchronized (host) {
+            host.latencyAverage = host.latencyAverage == 0 ? latencyMillis
+                    : host.latencyAverage * (1 - LATENCY_WEIGHT) + latencyMillis * LATENCY_WEIGHT;
+            host.latencyBaseline = Math.min(host.latencyBaseline, host.latencyAverage);
+            slow = host.latencyAverage > Math.max(host.latencyBaseline * SLOW_LATENCY_FACTOR, 50);
+        }
+        long interval = host.intervalNanos;
+        if (slow) {
+            interval = interval + Math.max(interval / 4, TimeUnit.MILLISECONDS.toNanos(DECREASE_STEP_MILLIS));
+        } else {
+            interval = interval - TimeUnit.MILLISECONDS.toNanos(DECREASE_STEP_MILLIS);
+        }
+        host.intervalNanos = clamp(host, interval);
+    }
+
+    /**
+     * 被限流（429/503）：间隔加倍，有 Retry-After 时暂停主机
+     * @param retryAfter 响应的 Retry-After 头（秒数或HTTP日期），可以为null
+     * @param attempt 该URL已重试的次数，用于计算退避时间
+     * @return 该URL应在多少毫秒后重试
+     */
+    public long onThrottled(String url, String retryAfter, int attempt) {
+        Host host = host(url);
+        throttled.incrementAndGet();
+        long interval = Math.max(host.intervalNanos * 2, TimeUnit.MILLISECONDS.toNanos(THROTTLE_START_MILLIS));
+        host.intervalNanos = clamp(host, interval);
+
+        long retryAfterMillis = parseRetryAfter(retryAfter);
+        if (retryAfterMillis > 0) {
+            long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(retryAfterMillis);
+            host.blockedUntil = Math.max(host.blockedUntil, until);
+            host.nextSlot.accumulateAndGet(until, Math::max);
+        }
+        return Math.max(retryAfterMillis, backoffMillis(attempt));
+    }
+
+    /**
+     * 指数退避：1秒、2秒、4秒……，最多 MAX_INTERVAL_MILLIS，加上最多25%的随机抖动
+     */
+    public static long backoffMillis(int attempt) {
+        long base = Math.min(MAX_INTERVAL_MILLIS, 1000L << Math.min(attempt, 20));
+        return base + (long) (Math.random() * base / 4);
+    }
+
+    /**
+     * 统计：各主机当前间隔、被限流次数、节奏控制累计等待时间
+     */
+    public String metrics() {
+        StringBuilder sb = new StringBuilder("节奏控制: 被限流 " + throttled.get() + " 次, 累计等待 "
+                + TimeUnit.NANOSECONDS.toMillis(waitedNanos.get()) + " 毫秒");
+        hosts.forEach((name, host) -> sb.append(", ").append(name).append(" 间隔 ")
+                .append(TimeUnit.NANOSECONDS.toMillis(host.intervalNanos)).append(" 毫秒"));
+        return sb.toString();
+    }
+
+    private static long clamp(Host host, long interval) {
+        return Math.min(Math.max(interval, host.floorNanos),
+                Math.max(host.floorNanos, TimeUnit.MILLISECONDS.toNanos(MAX_INTERVAL_MILLIS)));
+    }
+
+    /**
+     * 解析 Retry-After：秒数或HTTP日期，无法解析时返回0
+     */
+    static long parseRetryAfter(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return 0;
+        }
+        value = value.trim();
+        try {
+            return Math.min(MAX_RETRY_AFTER_MILLIS, Math.max(0, Long.parseLong(value) * 1000));
+        } catch (NumberFormatException e) {
+            // 不是秒数
+        }
+        try {
+            long millis = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli()
+                    - System.currentTimeMillis();
+            return Math.min(MAX_RETRY_AFTER_MILLIS, Math.max(0, millis));
+        } catch (DateTimeParseException e) {
+            return 0;
+        }
+    }
+
+    private Host host(String url) {
+        String name;
+        try {
+            URI uri = URI.create(url);
+            name = uri.getHost() != null ? uri.getHost().toLowerCase(Locale.ROOT) + (uri.getPort() != -1 ? ":" + uri.getPort() : "") : "";
+        } catch (IllegalArgumentException e) {
+            name = "";
+        }
+        return hosts.computeIfAbsent(name, key -> new Host());
+    }
+}
@@ -0,0 +1,298 @@
+package com.media;
+
+import okhttp3.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 共享HTTP客户端 - 所有抓取和下载共用一个连接池和调度器
+ * 同一主机的TCP连接和TLS会话在成千上万次请求之间复用，支持HTTP/2的服务器在一个连接上多路复用；
+ * 分段下载不能多路复用：N个分段共用一个TCP连接就又受限于单个TCP流的吞吐，分段下载器使用 segmented() 的只走HTTP/1.1的客户端，
+ * 每个分段各自一个连接（连接池和调度器仍共享）；
+ * 每次请求的DNS、建连、TLS握手、首字节和总耗时通过事件监听器统计
+ */
+public final class HttpClients {
+    private static final Logger logger = LoggerFactory.getLogger(HttpClients.class);
+
+    // 可通过 -Dmedia.http.maxIdleConnections / -Dmedia.http.maxRequestsPerHost 等调整
+    private static final int MAX_IDLE_CONNECTIONS = Integer.getInteger("media.http.maxIdleConnections", 32); // 连接池保留的空闲连接数
+    private static final long KEEP_ALIVE_MINUTES = Long.getLong("media.http.keepAliveMinutes", 5); // 空闲连接保留时间
+    private static final int MAX_REQUESTS = Integer.getInteger("media.http.maxRequests", 128); // 异步请求全局并发上限
+    private static final int MAX_REQUESTS_PER_HOST = Integer.getInteger("media.http.maxRequestsPerHost", 16); // 异步请求单主机并发上限
+
+    private static final List<TimingListener> timingListeners = new CopyOnWriteArrayList<>();
+
+    // 全局请求统计
+    private static final AtomicLong calls = new AtomicLong();
+    private static final AtomicLong failedCalls = new AtomicLong();
+    private static final AtomicLong connectionsOpened = new AtomicLong();
+    private static final AtomicLong reusedCalls = new AtomicLong();
+    private static final AtomicLong tlsHandshakes = new AtomicLong();
+
+    private static final OkHttpClient SHARED = createShared();
+    private static volatile OkHttpClient insecure;
+
+    /**
+     * 一次请求的耗时（毫秒），未发生的阶段为 -1
+     */
+    public static final class CallTiming {
+        public final String url;
+        public final long dnsMillis;
+        public final long connectMillis;
+        public final long tlsMillis;
+        public final long firstByteMillis;
+        public final long totalMillis;
+        public final boolean reusedConnection;
+        public final boolean failed;
+
+        CallTiming(String url, long dnsMillis, long connectMillis, long tlsMillis, long firstByteMillis,
+                   long totalMillis, boolean reusedConnection, boolean failed) {
+            this.url = url;
+            this.dnsMillis = dnsMillis;
+            this.connectMillis = connectMillis;
+            this.tlsMillis = tlsMillis;
+            this.firstByteMillis = firstByteMillis;
+            this.totalMillis = totalMillis;
+            this.reusedConnection = reusedConnection;
+            this.failed = failed;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s dns=%dms connect=%dms tls=%dms ttfb=%dms total=%dms%s%s", url,
+                    dnsMillis, connectMillis, tlsMillis, firstByteMillis, totalMillis,
+                    reusedConnection ? " (复用连接)" : "", failed ? " (失败)" : "");
+        }
+    }
+
+    /**
+     * 请求完成回调
+     */
+    public interface TimingListener {
+        void onCallTiming(CallTiming timing);
+    }
+
+    private HttpClients() {
+    }
+
+    /**
+     * 进程内共享的客户端
+     */
+    public static OkHttpClient shared() {
+        return SHARED;
+    }
+
+    /**
+     * 不校验证书的客户端（用于处理证书问题），与共享客户端使用同一个连接池和调度器
+     */
+    public static OkHttpClient insecure() {
+        OkHttpClient client = insecure;
+        if (client == null) {
+            synchronized (HttpClients.class) {
+                client = insecure;
+                if (client == null) {
+                    client = createInsecure();
+                    insecure = client;
+                }
+            }
+        }
+        return client;
+    }
+
+    /**
+     * 分段下载用的客户端：只使用HTTP/1.1，并发的分段请求各自占用一个TCP连接，而不是在一个HTTP/2连接上多路复用；
+     * 与原客户端共用连接池和调度器
+     */
+    public static OkHttpClient segmented(OkHttpClient base) {
+        return base.newBuilder()
+                .protocols(Collections.singletonList(Protocol.HTTP_1_1))
+                .build();
+    }
+
+    /**
+     * 在给定客户端的基础上，为每个请求设置固定的请求头（覆盖同名请求头），例如从浏览器抓取的 Cookie、Referer；
+     * 返回的客户端与原客户端共用连接池和调度器
+     */
+    public static OkHttpClient withHeaders(OkHttpClient base, Map<String, String> headers) {
+        Map<String, String> fixed = new LinkedHashMap<>(headers);
+        return base.newBuilder()
+                .addInterceptor(chain -> {
+                    Request.Builder request = chain.request().newBuilder();
+                    fixed.forEach(request::header);
+                    return chain.proceed(request.build());
+                })
+                .build();
+    }
+
+    /**
+     * 注册请求耗时回调
+     */
+    public static void addTimingListener(TimingListener listener) {
+        timingListeners.add(listener);
+    }
+
+    public static void removeTimingListener(TimingListener listener) {
+        timingListeners.remove(listener);
+    }
+
+    /**
+     * 全局请求统计：请求数、新建连接数、连接复用率、TLS握手次数
+     */
+    public static String metrics() {
+        long total = calls.get();
+        double reuseRate = total > 0 ? reusedCalls.get() * 100.0 / total : 0;
+        return String.format("HTTP: 请求 %d 次 (失败 %d), 新建连接 %d 个, 连接复用率 %.1f%%, TLS握手 %d 次, 空闲连接 %d 个",
+                total, failedCalls.get(), connectionsOpened.get(), reuseRate, tlsHandshakes.get(),
+                SHARED.connectionPool().idleConnectionCount());
+    }
+
+    private static OkHttpClient createShared() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(MAX_REQUESTS);
+        dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+
+        return new OkHttpClient.Builder()
+                .connectTimeout(30, TimeUnit.SECONDS)
+                .readTimeout(60, TimeUnit.SECONDS)
+                .writeTimeout(60, TimeUnit.SECONDS)
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                .dispatcher(dispatcher)
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .eventListenerFactory(call -> new TimingEventListener())
+                .build();
+    }
+
+    private static OkHttpClient createInsecure() {
+        try {
+            // 创建信任所有证书的TrustManager
+            X509TrustManager trustAll = new X509TrustManager() {
+                @Override
+                public void checkClientTrusted(X509Certificate[] chain, String authType) {}
+
+                @Override
+                public void checkServerTrusted(X509Certificate[] chain, String authType) {}
+
+                @Override
+                public X509Certificate[] getAcceptedIssuers() {
+                    return new X509Certificate[]{};
+                }
+            };
+
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, new TrustManager[]{trustAll}, new java.security.SecureRandom());
+
+            return SHARED.newBuilder()
+                    .sslSocketFactory(sslContext.getSocketFactory(), trustAll)
+                    .hostnameVerifier((hostname, session) -> true)
+                    .build();
+        } catch (Exception e) {
+            logger.error("创建不校验证书的客户端失败，使用共享客户端", e);
+            return SHARED;
+        }
+    }
+
+    /**
+     * 记录单次请求各阶段耗时的事件监听器
+     */
+    private static final class TimingEventListener extends EventListener {
+        private long callStart;
+        private long dnsStart = -1;
+        private long dnsMillis = -1;
+        private long connectStart = -1;
+        private long connectMillis = -1;
+        private long tlsStart = -1;
+        private long tlsMillis = -1;
+        private long firstByteMillis = -1;
+        private boolean opened;
+
+        @Override
+        public void callStart(Call call) {
+            callStart = System.nanoTime();
+            calls.incrementAndGet();
+        }
+
+        @Override
+        public void dnsStart(Call call, String domainName) {
+            dnsStart = System.nanoTime();
+        }
+
+        @Override
+        public void dnsEnd(Call call, String domainName, List<InetAddress> addresses) {
+            dnsMillis = sinceMillis(dnsStart);
+        }
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress address, Proxy proxy) {
+            connectStart = System.nanoTime();
+            opened = true;
+            connectionsOpened.incrementAndGet();
+        }
+
+        @Override
+        public void secureConnectStart(Call call) {
+            tlsStart = System.nanoTime();
+        }
+
+        @Override
+        public void secureConnectEnd(Call call, Handshake handshake) {
+            tlsMillis = sinceMillis(tlsStart);
+            tlsHandshakes.incrementAndGet();
+        }
+
+        @Override
+        public void connectEnd(Call call, InetSocketAddress address, Proxy proxy, Protocol protocol) {
+            connectMillis = sinceMillis(connectStart);
+        }
+
+        @Override
+        public void responseHeadersStart(Call call) {
+            if (firstByteMillis < 0) {
+                firstByteMillis = sinceMillis(callStart);
+            }
+        }
+
+        @Override
+        public void callEnd(Call call) {
+            finish(call, false);
+        }
+
+        @Override
+        public void callFailed(Call call, IOException ioe) {
+            failedCalls.incrementAndGet();
+            finish(call, true);
+        }
+
+        private void finish(Call call, boolean failed) {
+            if (!opened && !failed) {
+                reusedCalls.incrementAndGet();
+            }
+            CallTiming timing = new CallTiming(call.request().url().toString(), dnsMillis, connectMillis,
+                    tlsMillis, firstByteMillis, sinceMillis(callStart), !opened, failed);
+            logger.debug("请求耗时: {}", timing);
+            for (TimingListener listener : timingListeners) {
+                listener.onCallTiming(timing);
+            }
+        }
+
+        private static long sinceMillis(long start) {
+            return start < 0 ? -1 : (System.nanoTime() - start) / 1_000_000;
+        }
+    }
+}
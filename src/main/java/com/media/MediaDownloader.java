@@ -3,10 +3,7 @@ package com.media;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
+import okhttp3.ResponseBody;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -17,20 +14,16 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
- * 媒体下载器 - 从网页中下载媒体文件并保存为mp3
+ * 媒体下载器 - 从网页中下载媒体文件，按文件内容确定扩展名
  */
 public class MediaDownloader {
     private static final Logger logger = LoggerFactory.getLogger(MediaDownloader.class);
-    private static final OkHttpClient client = new OkHttpClient.Builder()
-            .connectTimeout(30, TimeUnit.SECONDS)
-            .readTimeout(60, TimeUnit.SECONDS)
-            .writeTimeout(60, TimeUnit.SECONDS)
-            .build();
+    private static final OkHttpClient client = HttpClients.shared();
+    private static final SegmentedDownloader downloader = new SegmentedDownloader(HttpClients.segmented(client));
 
     public static void main(String[] args) {
         if (args.length == 0) {
@@ -60,37 +53,39 @@ public class MediaDownloader {
         Path outputPath = Paths.get(outputDir);
         Files.createDirectories(outputPath);
 
-        // 获取网页内容
-        String htmlContent = fetchHtmlContent(url);
+        // 边接收网页边提取媒体链接，每找到一个立即提交到调度器下载
+        DownloadScheduler scheduler = DownloadScheduler.getDefault();
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        Set<String> mediaUrls = streamMediaUrls(url, mediaUrl -> {
+            int index = tasks.size() + 1;
+            logger.info("发现媒体 [{}]: {}", index, mediaUrl);
+            tasks.add(scheduler.<Void>submit(mediaUrl, () -> {
+                downloadAndSaveMedia(mediaUrl, outputPath, index);
+                return null;
+            }).whenComplete((result, e) -> {
+                if (e != null) {
+                    logger.error("下载媒体失败: {}", mediaUrl, e);
+                }
+            }));
+        });
         logger.info("成功获取网页内容");
 
-        // 解析媒体链接
-        Set<String> mediaUrls = extractMediaUrls(htmlContent, url);
-        
         if (mediaUrls.isEmpty()) {
             logger.warn("未找到媒体文件");
             return;
         }
 
         logger.info("找到 {} 个媒体文件", mediaUrls.size());
-
-        // 下载媒体文件
-        int count = 1;
-        for (String mediaUrl : mediaUrls) {
-            try {
-                downloadAndSaveMedia(mediaUrl, outputPath, count++);
-            } catch (Exception e) {
-                logger.error("下载媒体失败: {}", mediaUrl, e);
-            }
-        }
+        DownloadScheduler.awaitAll(tasks);
 
         logger.info("下载完成");
     }
 
     /**
-     * 获取网页内容
+     * 流式获取网页并提取媒体URL：不把整页读入内存，每个URL第一次出现时立即回调
+     * 页面大小受 -Dmedia.html.maxPageBytes 限制
      */
-    private static String fetchHtmlContent(String url) throws IOException {
+    private static Set<String> streamMediaUrls(String url, Consumer<String> onUrl) throws IOException {
         Request request = new Request.Builder()
                 .url(url)
                 .addHeader("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36")
@@ -100,128 +95,12 @@ public class MediaDownloader {
             if (!response.isSuccessful()) {
                 throw new IOException("HTTP请求失败: " + response.code());
             }
-            String body = response.body().string();
-            return body;
-        }
-    }
-
-    /**
-     * 从HTML中提取媒体URL
-     */
-    private static Set<String> extractMediaUrls(String htmlContent, String baseUrl) {
-        Set<String> mediaUrls = new LinkedHashSet<>();
-        Document doc = Jsoup.parse(htmlContent);
-
-        // 提取 <audio> 标签中的 src 属性
-        Elements audioSrcs = doc.select("audio source[src]");
-        for (Element element : audioSrcs) {
-            String src = element.attr("src");
-            if (!src.isEmpty()) {
-                mediaUrls.add(resolveUrl(src, baseUrl));
-            }
-        }
-
-        // 提取 <audio> 标签的 src 属性
-        Elements audioElements = doc.select("audio[src]");
-        for (Element element : audioElements) {
-            String src = element.attr("src");
-            if (!src.isEmpty()) {
-                mediaUrls.add(resolveUrl(src, baseUrl));
+            ResponseBody body = response.body();
+            try (Reader reader = PageStream.open(body.byteStream(), response.header("Content-Type"), body.contentLength())) {
+                // 重定向后以最终地址解析相对路径
+                return PageStream.scan(reader, response.request().url().toString(), onUrl);
             }
         }
-
-        // 提取 <video> 标签中的 src 属性
-        Elements videoSrcs = doc.select("video source[src]");
-        for (Element element : videoSrcs) {
-            String src = element.attr("src");
-            if (!src.isEmpty()) {
-                mediaUrls.add(resolveUrl(src, baseUrl));
-            }
-        }
-
-        // 提取 <video> 标签的 src 属性
-        Elements videoElements = doc.select("video[src]");
-        for (Element element : videoElements) {
-            String src = element.attr("src");
-            if (!src.isEmpty()) {
-                mediaUrls.add(resolveUrl(src, baseUrl));
-            }
-        }
-
-        // 提取 <a> 标签中指向媒体文件的链接
-        Elements links = doc.select("a[href]");
-        for (Element link : links) {
-            String href = link.attr("href");
-            if (isMediaFile(href)) {
-                mediaUrls.add(resolveUrl(href, baseUrl));
-            }
-        }
-
-        // 从script标签中提取媒体URL (JSON数据)
-        Elements scripts = doc.select("script");
-        for (Element script : scripts) {
-            String scriptContent = script.html();
-            mediaUrls.addAll(extractUrlsFromJson(scriptContent));
-        }
-
-        return mediaUrls;
-    }
-
-    /**
-     * 从JSON中提取媒体URL
-     */
-    private static Set<String> extractUrlsFromJson(String jsonContent) {
-        Set<String> urls = new LinkedHashSet<>();
-        // 匹配常见的URL模式
-        Pattern pattern = Pattern.compile("\"(https?://[^\"]+(?:\\.mp3|\\.mp4|\\.m4a|\\.wav|\\.ogg|\\.webm))\"");
-        Matcher matcher = pattern.matcher(jsonContent);
-        while (matcher.find()) {
-            urls.add(matcher.group(1));
-        }
-        return urls;
-    }
-
-    /**
-     * 判断是否是媒体文件
-     */
-    private static boolean isMediaFile(String url) {
-        String lowerUrl = url.toLowerCase();
-        return lowerUrl.matches(".*\\.(mp3|mp4|m4a|wav|ogg|webm|aac|flac)($|\\?)");
-    }
-
-    /**
-     * 解析相对URL为绝对URL
-     */
-    private static String resolveUrl(String url, String baseUrl) {
-        if (url.startsWith("http://") || url.startsWith("https://")) {
-            return url;
-        }
-
-        if (url.startsWith("//")) {
-            String protocol = baseUrl.startsWith("https") ? "https:" : "http:";
-            return protocol + url;
-        }
-
-        if (url.startsWith("/")) {
-            try {
-                java.net.URL baseUrlObj = new java.net.URL(baseUrl);
-                return baseUrlObj.getProtocol() + "://" + baseUrlObj.getHost() + url;
-            } catch (Exception e) {
-                return url;
-            }
-        }
-
-        // 相对URL
-        try {
-            java.net.URL baseUrlObj = new java.net.URL(baseUrl);
-            String basePath = baseUrlObj.getPath();
-            if (!basePath.endsWith("/")) {
-                basePath = basePath.substring(0, basePath.lastIndexOf("/") + 1);
-            }
-            return baseUrlObj.getProtocol() + "://" + baseUrlObj.getHost() + basePath + url;
-        } catch (Exception e) {
-            return url;
-        }
     }
 
     /**
@@ -230,32 +109,16 @@ public class MediaDownloader {
     private static void downloadAndSaveMedia(String mediaUrl, Path outputDir, int index) throws IOException {
         logger.info("下载媒体: {}", mediaUrl);
 
-        Request request = new Request.Builder()
-                .url(mediaUrl)
-                .addHeader("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36")
-                .build();
-
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new IOException("下载失败: HTTP " + response.code());
-            }
-
-            // 获取文件名
-            String filename = getFilenameFromUrl(mediaUrl, index);
-            Path filePath = outputDir.resolve(filename);
+        // 获取文件名
+        String filename = getFilenameFromUrl(mediaUrl, index);
+        Path filePath = outputDir.resolve(filename);
 
-            // 保存文件
-            try (InputStream is = response.body().byteStream();
-                 FileOutputStream fos = new FileOutputStream(filePath.toFile())) {
-                byte[] buffer = new byte[8192];
-                int bytesRead;
-                while ((bytesRead = is.read(buffer)) != -1) {
-                    fos.write(buffer, 0, bytesRead);
-                }
-            }
+        // 支持Range的服务器会分段并发下载，返回HTML页面时会中止
+        downloader.download(mediaUrl, filePath);
 
-            logger.info("文件已保存: {}", filePath);
-        }
+        // 按文件内容修正扩展名
+        filePath = MediaTypes.correctExtension(filePath);
+        logger.info("文件已保存: {}", filePath);
     }
 
     /**
@@ -268,30 +131,19 @@ public class MediaDownloader {
             String filename = cleanUrl.substring(cleanUrl.lastIndexOf("/") + 1);
             
             if (filename.isEmpty()) {
-                filename = "media_" + index + ".mp3";
+                // 没有文件名时暂不加扩展名，下载完成后按内容补上
+                filename = "media_" + index;
             } else {
                 // URL解码
                 filename = URLDecoder.decode(filename, StandardCharsets.UTF_8);
-                // 统一为mp3格式 (如果是音频文件)
-                if (isAudioFile(filename)) {
-                    filename = filename.replaceAll("\\.(mp3|mp4|m4a|wav|ogg|aac|webm|flac)$", ".mp3");
-                }
             }
             
             return filename;
         } catch (Exception e) {
-            return "media_" + index + ".mp3";
+            return "media_" + index;
         }
     }
 
-    /**
-     * 判断是否是音频文件
-     */
-    private static boolean isAudioFile(String filename) {
-        String lowerName = filename.toLowerCase();
-        return lowerName.matches(".*\\.(mp3|mp4|m4a|wav|ogg|aac|webm|flac)$");
-    }
-
     /**
      * 打印使用说明
      */
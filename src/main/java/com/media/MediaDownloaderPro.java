@@ -1,21 +1,26 @@
 package com.media;
 
-import org.openqa.selenium.By;
+import com.google.gson.Gson;
 import org.openqa.selenium.JavascriptExecutor;
 import org.openqa.selenium.WebDriver;
-import org.openqa.selenium.WebElement;
-import org.openqa.selenium.chrome.ChromeDriver;
-import org.openqa.selenium.chrome.ChromeOptions;
-import org.openqa.selenium.support.ui.WebDriverWait;
-import org.openqa.selenium.support.ui.ExpectedConditions;
-import io.github.bonigarcia.wdm.WebDriverManager;
+import okhttp3.OkHttpClient;
 
 import java.io.*;
 import java.net.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.time.Duration;
 import java.util.*;
-import java.util.regex.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 
 /**
  * 媒体下载器Pro - 支持动态加载内容
@@ -23,7 +28,45 @@ import java.util.regex.*;
  */
 public class MediaDownloaderPro {
     private static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36";
-    private static final int WAIT_TIMEOUT = 30; // 秒
+    private static final int WAIT_TIMEOUT = Integer.getInteger("media.page.maxWaitSeconds", 30); // 页面就绪最长等待时间（秒）
+    private static final int AUTO_WORKERS_PER_BROWSER = 4; // 自动模式下每个浏览器对应的页面处理线程数（多数页面只需静态解析）
+    private static final OkHttpClient client = HttpClients.shared();
+    private static final SegmentedDownloader downloader = new SegmentedDownloader(HttpClients.segmented(client));
+    private static final HlsDownloader hlsDownloader = new HlsDownloader(client);
+
+    // 在页面中一次性收集候选媒体地址，以JSON字符串返回：
+    // <audio>/<video> 及其 <source> 的地址无论扩展名都收集，其他位置（<source>/srcset、data-* 属性、
+    // 已加载的资源）只收集带媒体扩展名的地址
+    private static final String EXTRACT_SCRIPT = String.join("\n",
+            "var media = /\\.(" + mediaExtensionPattern() + ")([?#]|$)/i, seen = {}, out = [];",
+            "function add(value, any) {",
+            "  if (!value) return;",
+            "  var url;",
+            "  try { url = new URL(value, document.baseURI).href; } catch (e) { return; }",
+            "  if (!/^https?:/.test(url) || seen[url] || !(any || media.test(url))) return;",
+            "  seen[url] = true;",
+            "  out.push(url);",
+            "}",
+            "function addSrcset(srcset) {",
+            "  if (srcset) srcset.split(',').forEach(function (c) { add(c.trim().split(/\\s+/)[0], false); });",
+            "}",
+            "document.querySelectorAll('audio, video').forEach(function (el) {",
+            "  add(el.currentSrc, true);",
+            "  add(el.getAttribute('src'), true);",
+            "  el.querySelectorAll('source').forEach(function (s) { add(s.getAttribute('src'), true); addSrcset(s.getAttribute('srcset')); });",
+            "});",
+            "document.querySelectorAll('source').forEach(function (s) { add(s.getAttribute('src'), false); addSrcset(s.getAttribute('srcset')); });",
+            "var all = document.getElementsByTagName('*');",
+            "for (var i = 0; i < all.length; i++) {",
+            "  var attrs = all[i].attributes;",
+            "  for (var j = 0; j < attrs.length; j++) {",
+            "    if (attrs[j].name.lastIndexOf('data-', 0) === 0) add(attrs[j].value, false);",
+            "  }",
+            "}",
+            "performance.getEntriesByType('resource').forEach(function (r) {",
+            "  add(r.name, r.initiatorType === 'video' || r.initiatorType === 'audio');",
+            "});",
+            "return JSON.stringify(out);");
 
     public static void main(String[] args) {
         if (args.length == 0) {
@@ -33,15 +76,23 @@ public class MediaDownloaderPro {
 
         String url = args[0];
         String outputDir = args.length > 1 ? args[1] : "./downloads";
-        String mode = args.length > 2 ? args[2] : "dynamic"; // dynamic 或 static
+        String mode = args.length > 2 ? args[2] : "dynamic"; // dynamic、static 或 auto
 
         try {
             if ("static".equalsIgnoreCase(mode)) {
                 System.out.println("使用静态解析模式");
                 MediaDownloaderStandalone.downloadMediaFromUrl(url, outputDir);
             } else {
-                System.out.println("使用动态加载模式（Selenium Browser）");
-                downloadMediaWithSelenium(url, outputDir);
+                boolean auto = "auto".equalsIgnoreCase(mode);
+                System.out.println(auto ? "使用自动模式（先静态解析，必要时使用浏览器）" : "使用动态加载模式（Selenium Browser）");
+                if (isPageList(url)) {
+                    // 第一个参数是页面列表文件或 -（标准输入）：批量处理，浏览器在页面之间复用
+                    downloadBatch(url, outputDir, auto);
+                } else if (auto) {
+                    downloadMediaAuto(url, outputDir);
+                } else {
+                    downloadMediaWithSelenium(url, outputDir);
+                }
             }
         } catch (Exception e) {
             System.err.println("错误: " + e.getMessage());
@@ -51,335 +102,400 @@ public class MediaDownloaderPro {
     }
 
     /**
-     * 使用Selenium动态加载页面并获取媒体URL
+     * 参数是否是页面列表文件或 -（标准输入）：http/https 地址直接当作URL，不访问文件系统
+     * （Windows 上 Paths.get 遇到地址中的 : 会抛出 InvalidPathException）
      */
-    public static void downloadMediaWithSelenium(String url, String outputDir) throws Exception {
-        System.out.println("初始化Selenium WebDriver...");
-        
-        // 自动下载ChromeDriver - 指定版本为145
+    private static boolean isPageList(String arg) {
+        if (arg.equals("-")) {
+            return true;
+        }
+        if (arg.regionMatches(true, 0, "http://", 0, 7) || arg.regionMatches(true, 0, "https://", 0, 8)) {
+            return false;
+        }
         try {
-            WebDriverManager.chromedriver()
-                    .browserVersion("145")
-                    .setup();
-        } catch (Exception e) {
-            System.out.println("使用指定版本失败，尝试使用最新缓存的版本...");
-            try {
-                // 尝试使用缓存的最新版本
-                WebDriverManager.chromedriver()
-                        .forceDownload()
-                        .avoidResolutionCache()
-                        .setup();
-            } catch (Exception e2) {
-                System.out.println("版本指定失败，尝试自动检测系统ChromeDriver...");
-                // 最后尝试：使用系统上已有的ChromeDriver或浏览器版本
-                System.out.println("警告：WebDriverManager初始化失败 - " + e2.getMessage());
-                System.out.println("请确保已安装Chrome浏览器，并且系统PATH中包含chromedriver");
-                throw new RuntimeException("无法初始化WebDriver", e2);
-            }
+            return Files.isRegularFile(Paths.get(arg));
+        } catch (InvalidPathException e) {
+            return false;
         }
+    }
 
-        // 配置Chrome选项
-        ChromeOptions options = new ChromeOptions();
-        options.addArguments("--start-maximized");
-        options.addArguments("--disable-blink-features=AutomationControlled");
-        options.addArguments("user-agent=" + USER_AGENT);
-        // 可选：无头模式（不显示浏览器窗口）
-        // options.addArguments("--headless");
+    /**
+     * 媒体扩展名的正则表达式片段，例如 mp3|mp4|m4a
+     */
+    private static String mediaExtensionPattern() {
+        StringBuilder pattern = new StringBuilder();
+        for (String extension : MediaUrlScanner.MEDIA_EXTENSIONS) {
+            if (pattern.length() > 0) {
+                pattern.append('|');
+            }
+            pattern.append(extension.substring(1));
+        }
+        return pattern.toString();
+    }
 
-        WebDriver driver = new ChromeDriver(options);
+    /**
+     * 使用Selenium动态加载页面并获取媒体URL
+     */
+    public static void downloadMediaWithSelenium(String url, String outputDir) throws Exception {
+        downloadMediaWithSelenium(Collections.singletonList(url), outputDir);
+    }
 
-        try {
-            System.out.println("打开网页: " + url);
-            driver.get(url);
-
-            // 等待页面加载5秒
-            Thread.sleep(5000);
-
-            // 获取页面源代码
-            String pageSource = driver.getPageSource();
-
-            // 创建输出目录
-            Path outputPath = Paths.get(outputDir);
-            Files.createDirectories(outputPath);
-
-            // 方法1: 从页面源代码中提取媒体URL
-            System.out.println("\n[方法1] 从页面源代码提取媒体URL");
-            Set<String> mediaUrls = extractMediaUrls(pageSource, url);
-
-            // 方法2: 执行JavaScript获取媒体对象
-            System.out.println("\n[方法2] 执行JavaScript获取媒体信息");
-            Set<String> jsMediaUrls = extractMediaViaJavaScript(driver);
-            mediaUrls.addAll(jsMediaUrls);
-
-            // 方法3: 查找页面中的<audio>和<video>标签
-            System.out.println("\n[方法3] 查找HTML媒体标签");
-            Set<String> htmlMediaUrls = extractFromHtmlElements(driver, url);
-            mediaUrls.addAll(htmlMediaUrls);
-
-            if (mediaUrls.isEmpty()) {
-                System.out.println("⚠ 未找到媒体文件");
-                System.out.println("\n调试信息: 以下是页面中找到的所有src属性:");
-                Pattern srcPattern = Pattern.compile("src=[\"']([^\"']+[.](mp3|mp4|m4a|wav|ogg|webm|aac|flac|m3u8))[\"']");
-                Matcher matcher = srcPattern.matcher(pageSource);
-                while (matcher.find()) {
-                    System.out.println("  - " + matcher.group(1));
-                }
-                return;
-            }
+    /**
+     * 使用浏览器池批量处理页面：多个页面同时渲染，浏览器实例在页面之间复用
+     */
+    public static void downloadMediaWithSelenium(List<String> urls, String outputDir) throws Exception {
+        Path outputPath = Paths.get(outputDir);
+        List<PageBatch.Entry> entries = new ArrayList<>();
+        for (String url : urls) {
+            entries.add(new PageBatch.Entry(url, outputPath));
+        }
+        runPages(entries.iterator(), Math.min(urls.size(), BrowserPool.DEFAULT_SIZE), false, null);
+    }
 
-            System.out.println("✓ 找到 " + mediaUrls.size() + " 个媒体文件");
-
-            // 下载媒体文件
-            int count = 1;
-            for (String mediaUrl : mediaUrls) {
-                try {
-                    System.out.println("\n[" + count + "/" + mediaUrls.size() + "] 下载: " + mediaUrl);
-                    downloadAndSaveMedia(mediaUrl, outputPath, count);
-                    count++;
-                } catch (Exception e) {
-                    System.err.println("✗ 下载失败: " + e.getMessage());
-                }
-            }
+    /**
+     * 自动模式：先不启动浏览器直接解析页面，没有找到媒体或页面依赖客户端渲染时才使用浏览器
+     */
+    public static void downloadMediaAuto(String url, String outputDir) throws Exception {
+        runPages(Collections.singletonList(new PageBatch.Entry(url, Paths.get(outputDir))).iterator(), 1, true, null);
+    }
 
-            System.out.println("\n✓ 下载完成！");
+    /**
+     * 批量模式：从文件或标准输入（-）读取页面列表，每个页面的结果追加到JSONL汇总文件
+     * 汇总文件默认为 输出目录/batch-summary.jsonl，可通过 -Dmedia.batch.summary 指定
+     */
+    public static void downloadBatch(String input, String outputDir) throws Exception {
+        downloadBatch(input, outputDir, false);
+    }
 
-        } finally {
-            driver.quit();
+    /**
+     * @param auto 是否使用自动模式（每个页面先尝试静态解析）
+     */
+    public static void downloadBatch(String input, String outputDir, boolean auto) throws Exception {
+        Path summaryFile = Paths.get(System.getProperty("media.batch.summary",
+                Paths.get(outputDir, "batch-summary.jsonl").toString()));
+        BufferedReader reader = input.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Paths.get(input), StandardCharsets.UTF_8);
+        try (BufferedReader in = reader;
+             PageBatch.SummaryWriter summary = new PageBatch.SummaryWriter(summaryFile)) {
+            System.out.println("批量处理页面列表: " + (input.equals("-") ? "标准输入" : input));
+            runPages(PageBatch.read(in, Paths.get(outputDir)), BrowserPool.DEFAULT_SIZE, auto, summary);
+            System.out.println("  汇总: " + summaryFile.toAbsolutePath());
         }
     }
 
     /**
-     * 执行JavaScript获取页面中的媒体对象
+     * 处理一批页面：渲染和下载是重叠进行的两个阶段——页面渲染完成后立即归还浏览器并开始下载它的媒体，
+     * 浏览器随即渲染下一个页面；页面列表按需读取，等待渲染的页面数有上限
+     * @param auto 自动模式：每个页面先静态解析，需要时才租用浏览器，处理线程数按浏览器数放大
+     * @param summary 汇总文件，为null时不写
      */
-    private static Set<String> extractMediaViaJavaScript(WebDriver driver) {
-        Set<String> urls = new LinkedHashSet<>();
-
-        try {
-            // 方法1: 获取所有<audio>标签的src
-            Object audioSrcs = (Object) ((JavascriptExecutor) driver).executeScript(
-                "return Array.from(document.querySelectorAll('audio')).map(el => el.src || el.querySelector('source')?.src).filter(s => s)"
-            );
-            if (audioSrcs instanceof java.util.List) {
-                ((java.util.List<?>) audioSrcs).forEach(src -> {
-                    if (src != null) {
-                        urls.add(resolveUrl(src.toString(), driver.getCurrentUrl()));
+    private static void runPages(Iterator<PageBatch.Entry> entries, int browsers, boolean auto,
+                                 PageBatch.SummaryWriter summary) throws Exception {
+        browsers = Math.max(1, browsers);
+        int workers = auto ? browsers * AUTO_WORKERS_PER_BROWSER : browsers;
+        ExecutorService renderers = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "page-render");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Semaphore queued = new Semaphore(workers * 2); // 已读入但尚未开始处理的页面上限
+        AtomicInteger mediaIndex = new AtomicInteger();
+        Map<String, AtomicInteger> statusCounts = new ConcurrentHashMap<>();
+        AtomicInteger staticPages = new AtomicInteger();
+        List<CompletableFuture<Void>> pages = new ArrayList<>();
+
+        try (BrowserPool pool = new BrowserPool(browsers)) {
+            while (entries.hasNext()) {
+                PageBatch.Entry entry = entries.next();
+                queued.acquire();
+                CompletableFuture<Void> page = new CompletableFuture<>();
+                pages.add(page);
+                renderers.execute(() -> {
+                    queued.release();
+                    PageBatch.Result result = new PageBatch.Result();
+                    result.url = entry.url;
+                    result.outputDir = entry.outputDir.toString();
+                    long start = System.currentTimeMillis();
+                    List<CompletableFuture<Path>> downloads;
+                    try {
+                        Files.createDirectories(entry.outputDir);
+                        downloads = auto
+                                ? processPageAuto(pool, entry.url, entry.outputDir, mediaIndex, result)
+                                : processPage(pool, entry.url, entry.outputDir, mediaIndex);
+                        if (result.renderer == null) {
+                            result.renderer = PageBatch.Result.BROWSER;
+                        }
+                    } catch (Exception e) {
+                        if (e instanceof InterruptedException) {
+                            Thread.currentThread().interrupt();
+                        }
+                        System.err.println("✗ 页面处理失败: " + entry.url + " - " + e.getMessage());
+                        result.status = PageBatch.Result.FAILED;
+                        result.error = String.valueOf(e.getMessage());
+                        downloads = Collections.emptyList();
+                    }
+                    result.renderMillis = System.currentTimeMillis() - start;
+                    if (PageBatch.Result.STATIC.equals(result.renderer)) {
+                        staticPages.incrementAndGet();
                     }
+                    result.mediaFound = downloads.size();
+
+                    // 该页面的下载全部结束后写汇总，不占用渲染线程
+                    List<CompletableFuture<Path>> pageDownloads = downloads;
+                    CompletableFuture.allOf(pageDownloads.toArray(new CompletableFuture<?>[0]))
+                            .handle((ignored, error) -> {
+                                finishPage(result, pageDownloads, start, summary, statusCounts);
+                                return null;
+                            })
+                            .whenComplete((ignored, error) -> page.complete(null));
                 });
             }
 
-            // 方法2: 获取所有<video>标签的src
-            Object videoSrcs = (Object) ((JavascriptExecutor) driver).executeScript(
-                "return Array.from(document.querySelectorAll('video')).map(el => el.src || el.querySelector('source')?.src).filter(s => s)"
-            );
-            if (videoSrcs instanceof java.util.List) {
-                ((java.util.List<?>) videoSrcs).forEach(src -> {
-                    if (src != null) {
-                        urls.add(resolveUrl(src.toString(), driver.getCurrentUrl()));
-                    }
-                });
+            for (CompletableFuture<Void> page : pages) {
+                page.join();
             }
 
-            // 方法3: 获取所有<source>标签
-            Object sources = (Object) ((JavascriptExecutor) driver).executeScript(
-                "return Array.from(document.querySelectorAll('source')).map(el => el.src).filter(s => s && s.match(/\\.(mp3|mp4|m4a|wav|ogg|webm|aac|flac)/))"
-            );
-            if (sources instanceof java.util.List) {
-                ((java.util.List<?>) sources).forEach(src -> {
-                    if (src != null) {
-                        urls.add(resolveUrl(src.toString(), driver.getCurrentUrl()));
-                    }
-                });
+            System.out.println("\n✓ 下载完成！共处理 " + pages.size() + " 个页面 " + statusCounts);
+            if (auto) {
+                System.out.println("  静态解析 " + staticPages.get() + " 个页面，使用浏览器 " + (pages.size() - staticPages.get()) + " 个页面");
             }
+            System.out.println("  " + pool.metrics());
+        } finally {
+            renderers.shutdownNow();
+        }
+    }
 
-            // 方法4: 获取页面上定义的window.media或全局变量
+    /**
+     * 统计一个页面的下载结果并写入汇总
+     */
+    private static void finishPage(PageBatch.Result result, List<CompletableFuture<Path>> downloads, long start,
+                                   PageBatch.SummaryWriter summary, Map<String, AtomicInteger> statusCounts) {
+        for (CompletableFuture<Path> download : downloads) {
             try {
-                Object mediaObj = (Object) ((JavascriptExecutor) driver).executeScript("return window.media || window.Media || null");
-                if (mediaObj != null) {
-                    System.out.println("✓ 找到window.media对象");
-                }
-            } catch (Exception e) {
-                // 忽略
+                result.files.add(download.join().toString());
+                result.downloaded++;
+            } catch (CompletionException | CancellationException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                result.errors.add(String.valueOf(cause.getMessage()));
+                result.failed++;
+            }
+        }
+        if (result.status == null) {
+            result.status = result.mediaFound == 0 ? PageBatch.Result.EMPTY
+                    : result.failed == 0 ? PageBatch.Result.OK : PageBatch.Result.PARTIAL;
+        }
+        result.totalMillis = System.currentTimeMillis() - start;
+        statusCounts.computeIfAbsent(result.status, status -> new AtomicInteger()).incrementAndGet();
+        if (summary != null) {
+            try {
+                summary.write(result);
+            } catch (IOException e) {
+                System.err.println("✗ 写入汇总失败: " + e.getMessage());
             }
-
-        } catch (Exception e) {
-            System.err.println("执行JavaScript失败: " + e.getMessage());
         }
-
-        return urls;
     }
 
     /**
-     * 从HTML元素中提取媒体
+     * 租用浏览器渲染一个页面并提取媒体URL，归还浏览器后把下载任务提交到调度器
+     * 页面发出的媒体请求通过DevTools抓取：能直接识别的媒体文件在请求发出时就开始下载，
+     * 播放列表和没有扩展名的流在页面加载完后统一处理，以便排除已被播放列表包含的子播放列表和分片
+     * @param mediaIndex 整批共用的文件编号，避免不同页面的无名文件重名
+     * @return 该页面的下载任务，完成时得到保存的文件路径
      */
-    private static Set<String> extractFromHtmlElements(WebDriver driver, String baseUrl) {
-        Set<String> urls = new LinkedHashSet<>();
+    private static List<CompletableFuture<Path>> processPage(BrowserPool pool, String url, Path outputPath,
+                                                             AtomicInteger mediaIndex) throws Exception {
+        List<CompletableFuture<Path>> tasks = new CopyOnWriteArrayList<>();
+        Set<String> submitted = ConcurrentHashMap.newKeySet();
+        BiConsumer<String, Map<String, String>> submit = submitter(outputPath, mediaIndex, submitted, tasks);
+
+        try (BrowserPool.Lease lease = pool.acquire()) {
+            WebDriver driver = lease.driver();
+
+            // 打开页面之前开始抓包并注入就绪检测脚本
+            try (NetworkCapture capture = NetworkCapture.start(driver);
+                 PageReadiness readiness = PageReadiness.install(driver)) {
+                if (capture != null) {
+                    capture.onMedia(media -> {
+                        MediaTypes.Type type = MediaTypes.fromExtension(media.url);
+                        if (type != null && type.kind() != MediaTypes.Kind.PLAYLIST && type != MediaTypes.Type.MPEG_TS) {
+                            System.out.println("[网络] 捕获媒体: " + media);
+                            submit.accept(media.url, media.headers);
+                        }
+                    });
+                } else {
+                    System.out.println("⚠ 浏览器不支持DevTools，仅从页面内容中提取媒体");
+                }
 
-        try {
-            // 获取所有<audio>标签
-            java.util.List<WebElement> audios = driver.findElements(By.tagName("audio"));
-            for (WebElement audio : audios) {
-                String src = audio.getAttribute("src");
-                if (src != null && !src.isEmpty()) {
-                    urls.add(resolveUrl(src, baseUrl));
+                System.out.println("打开网页: " + url);
+                long start = System.currentTimeMillis();
+                driver.get(url);
+
+                // 等待网络空闲、DOM稳定（以及站点配置的选择器出现），最多等待 WAIT_TIMEOUT 秒
+                if (readiness.await(Duration.ofSeconds(WAIT_TIMEOUT))) {
+                    System.out.println("页面已就绪，用时 " + (System.currentTimeMillis() - start) + " 毫秒");
+                } else {
+                    System.out.println("⚠ 页面在 " + WAIT_TIMEOUT + " 秒内未完全就绪，继续提取");
                 }
-            }
 
-            // 获取所有<video>标签
-            java.util.List<WebElement> videos = driver.findElements(By.tagName("video"));
-            for (WebElement video : videos) {
-                String src = video.getAttribute("src");
-                if (src != null && !src.isEmpty()) {
-                    urls.add(resolveUrl(src, baseUrl));
+                // 获取页面源代码
+                String pageSource = driver.getPageSource();
+
+                // 方法1: 页面发出的媒体请求
+                if (capture != null) {
+                    System.out.println("\n[方法1] 从网络请求中提取媒体URL");
+                    for (NetworkCapture.CapturedMedia media : capture.media()) {
+                        submit.accept(media.url, media.headers);
+                    }
                 }
-            }
 
-            // 获取所有<source>标签
-            java.util.List<WebElement> sources = driver.findElements(By.tagName("source"));
-            for (WebElement source : sources) {
-                String src = source.getAttribute("src");
-                if (src != null && !src.isEmpty() && isMediaFile(src)) {
-                    urls.add(resolveUrl(src, baseUrl));
+                // 方法2: 从页面源代码中提取媒体URL
+                System.out.println("\n[方法2] 从页面源代码提取媒体URL");
+                Set<String> mediaUrls = MediaUrlScanner.scan(pageSource, url);
+
+                // 方法3: 在页面中执行提取脚本（媒体标签、srcset、data-* 属性、已加载的资源）
+                System.out.println("\n[方法3] 执行JavaScript提取媒体标签和资源");
+                mediaUrls.addAll(extractMediaInPage(driver));
+
+                for (String mediaUrl : mediaUrls) {
+                    submit.accept(mediaUrl, null);
                 }
-            }
 
-        } catch (Exception e) {
-            System.err.println("提取HTML元素失败: " + e.getMessage());
+                if (submitted.isEmpty()) {
+                    System.out.println("⚠ 未找到媒体文件: " + url + "（页面源代码 " + pageSource.length() + " 个字符中没有媒体链接，也没有媒体请求）");
+                    return Collections.emptyList();
+                }
+            }
         }
 
-        return urls;
+        System.out.println("✓ " + url + " 找到 " + submitted.size() + " 个媒体文件");
+        return tasks;
     }
 
     /**
-     * 从HTML中提取媒体URL
+     * 自动模式处理一个页面：先直接获取页面扫描媒体链接，找到媒体且没有客户端渲染的迹象时直接下载，
+     * 否则改用浏览器渲染；静态解析从未成功过的站点，之后的页面跳过静态解析
      */
-    private static Set<String> extractMediaUrls(String htmlContent, String baseUrl) throws MalformedURLException {
-        Set<String> mediaUrls = new LinkedHashSet<>();
-
-        // 提取 <audio> 标签中的 src 属性
-        Pattern audioPattern = Pattern.compile("<audio[^>]*src=[\"']([^\"']+)[\"']", Pattern.CASE_INSENSITIVE);
-        Matcher matcher = audioPattern.matcher(htmlContent);
-        while (matcher.find()) {
-            String src = matcher.group(1);
-            mediaUrls.add(resolveUrl(src, baseUrl));
-        }
-
-        // 提取 <audio><source src="..."/>
-        Pattern audioSourcePattern = Pattern.compile("<source[^>]*src=[\"']([^\"']+)[\"'][^>]*>", Pattern.CASE_INSENSITIVE);
-        matcher = audioSourcePattern.matcher(htmlContent);
-        while (matcher.find()) {
-            String src = matcher.group(1);
-            if (isMediaFile(src)) {
-                mediaUrls.add(resolveUrl(src, baseUrl));
+    private static List<CompletableFuture<Path>> processPageAuto(BrowserPool pool, String url, Path outputPath,
+                                                                 AtomicInteger mediaIndex,
+                                                                 PageBatch.Result result) throws Exception {
+        if (StaticProbe.prefersBrowser(url)) {
+            result.escalation = "该站点静态解析未成功过";
+        } else {
+            String escalation;
+            try {
+                StaticProbe.Result probe = StaticProbe.fetch(client, url);
+                escalation = probe.escalation();
+                if (escalation == null) {
+                    StaticProbe.record(url, true);
+                    result.renderer = PageBatch.Result.STATIC;
+                    System.out.println("✓ " + url + " 静态解析找到 " + probe.mediaUrls.size() + " 个媒体文件");
+                    List<CompletableFuture<Path>> tasks = new CopyOnWriteArrayList<>();
+                    BiConsumer<String, Map<String, String>> submit =
+                            submitter(outputPath, mediaIndex, ConcurrentHashMap.newKeySet(), tasks);
+                    for (String mediaUrl : probe.mediaUrls) {
+                        submit.accept(mediaUrl, null);
+                    }
+                    return tasks;
+                }
+            } catch (IOException e) {
+                escalation = "静态获取失败: " + e.getMessage();
             }
+            StaticProbe.record(url, false);
+            result.escalation = escalation;
+            System.out.println("[自动] " + url + " 改用浏览器: " + escalation);
         }
-
-        // 提取 <video> 标签中的 src 属性
-        Pattern videoPattern = Pattern.compile("<video[^>]*src=[\"']([^\"']+)[\"']", Pattern.CASE_INSENSITIVE);
-        matcher = videoPattern.matcher(htmlContent);
-        while (matcher.find()) {
-            String src = matcher.group(1);
-            mediaUrls.add(resolveUrl(src, baseUrl));
-        }
-
-        // 从JavaScript中提取URL
-        Pattern jsUrlPattern = Pattern.compile("(?:url|src|source|media)\\s*[:=]\\s*[\"']+(https?://[^\"'\\s;,]+\\.(?:mp3|mp4|m4a|wav|ogg|webm|aac|flac|m3u8))", Pattern.CASE_INSENSITIVE);
-        matcher = jsUrlPattern.matcher(htmlContent);
-        while (matcher.find()) {
-            String url = matcher.group(1);
-            mediaUrls.add(url);
-        }
-
-        // 从JSON中提取URL
-        Pattern jsonUrlPattern = Pattern.compile("\"(https?://[^\"]+(?:\\.mp3|\\.mp4|\\.m4a|\\.wav|\\.ogg|\\.webm|\\.aac|\\.flac|\\.m3u8))\"");
-        matcher = jsonUrlPattern.matcher(htmlContent);
-        while (matcher.find()) {
-            String url = matcher.group(1);
-            mediaUrls.add(url);
-        }
-
-        return mediaUrls;
+        return processPage(pool, url, outputPath, mediaIndex);
     }
 
     /**
-     * 判断是否是媒体文件
+     * 创建提交下载任务的回调：同一页面的同一URL只提交一次，任务加入 tasks
      */
-    private static boolean isMediaFile(String url) {
-        String lowerUrl = url.toLowerCase();
-        return lowerUrl.matches(".*\\.(mp3|mp4|m4a|wav|ogg|webm|aac|flac|m3u8)($|\\?)");
+    private static BiConsumer<String, Map<String, String>> submitter(Path outputPath, AtomicInteger mediaIndex,
+                                                                     Set<String> submitted,
+                                                                     List<CompletableFuture<Path>> tasks) {
+        DownloadScheduler scheduler = DownloadScheduler.getDefault();
+        return (mediaUrl, headers) -> {
+            if (!submitted.add(mediaUrl)) {
+                return;
+            }
+            int index = mediaIndex.incrementAndGet();
+            String label = "[" + index + "]";
+            tasks.add(scheduler.submit(mediaUrl, () -> {
+                System.out.println(label + " 下载: " + mediaUrl);
+                return downloadAndSaveMedia(mediaUrl, outputPath, index, headers);
+            }).whenComplete((result, e) -> {
+                if (e != null) {
+                    System.err.println("✗ " + label + " 下载失败: " + e.getMessage());
+                }
+            }));
+        };
     }
 
     /**
-     * 解析相对URL为绝对URL
+     * 在页面中执行一次提取脚本，收集所有候选媒体地址
+     * 一次 executeScript 往返，耗时与页面元素数量无关
      */
-    private static String resolveUrl(String url, String baseUrl) {
+    private static Set<String> extractMediaInPage(WebDriver driver) {
+        Set<String> urls = new LinkedHashSet<>();
         try {
-            if (url.startsWith("http://") || url.startsWith("https://")) {
-                return url;
-            }
-
-            if (url.startsWith("//")) {
-                String protocol = baseUrl.startsWith("https") ? "https:" : "http:";
-                return protocol + url;
-            }
-
-            URL baseUrlObj = new URL(baseUrl);
-
-            if (url.startsWith("/")) {
-                return baseUrlObj.getProtocol() + "://" + baseUrlObj.getHost() + url;
-            }
-
-            // 相对URL
-            String basePath = baseUrlObj.getPath();
-            if (!basePath.endsWith("/")) {
-                basePath = basePath.substring(0, basePath.lastIndexOf("/") + 1);
+            Object json = ((JavascriptExecutor) driver).executeScript(EXTRACT_SCRIPT);
+            if (json instanceof String) {
+                for (String url : new Gson().fromJson((String) json, String[].class)) {
+                    if (url.startsWith("http://") || url.startsWith("https://")) {
+                        urls.add(url);
+                    }
+                }
             }
-            return baseUrlObj.getProtocol() + "://" + baseUrlObj.getHost() + basePath + url;
         } catch (Exception e) {
-            return url;
+            System.err.println("执行JavaScript失败: " + e.getMessage());
         }
+        return urls;
     }
 
     /**
      * 下载并保存媒体文件
+     * @param headers 回放下载需要的请求头（抓包得到的 Cookie、Referer 等），可以为null
+     * @return 保存的文件路径
      */
-    private static void downloadAndSaveMedia(String mediaUrl, Path outputDir, int index) throws IOException {
-        URL url = new URL(mediaUrl);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestProperty("User-Agent", USER_AGENT);
-        conn.setConnectTimeout(30000);
-        conn.setReadTimeout(60000);
-
-        if (conn.getResponseCode() != HttpURLConnection.HTTP_OK) {
-            throw new IOException("下载失败: HTTP " + conn.getResponseCode());
-        }
+    private static Path downloadAndSaveMedia(String mediaUrl, Path outputDir, int index,
+                                             Map<String, String> headers) throws IOException {
+        SegmentedDownloader downloader = MediaDownloaderPro.downloader.withHeaders(headers);
+        HlsDownloader hlsDownloader = MediaDownloaderPro.hlsDownloader.withHeaders(headers);
 
         // 获取文件名
         String filename = getFilenameFromUrl(mediaUrl, index);
-        Path filePath = outputDir.resolve(filename);
 
-        // 保存文件
-        try (InputStream is = conn.getInputStream();
-             FileOutputStream fos = new FileOutputStream(filePath.toFile())) {
-            byte[] buffer = new byte[8192];
-            int bytesRead;
-            long totalBytes = 0;
-            long contentLength = conn.getContentLengthLong();
-
-            System.out.print("  进度: ");
-            while ((bytesRead = is.read(buffer)) != -1) {
-                fos.write(buffer, 0, bytesRead);
-                totalBytes += bytesRead;
-
-                if (contentLength > 0) {
-                    int percent = (int) ((totalBytes * 100) / contentLength);
-                    if (percent % 10 == 0 && percent > 0) {
-                        System.out.print(percent + "% ");
-                    }
-                }
+        // HLS播放列表：下载所有分片并合并为一个文件
+        if (HlsDownloader.isPlaylist(mediaUrl)) {
+            String baseName = filename.replaceAll("(?i)\\.m3u8?$", "");
+            if (baseName.isEmpty() || baseName.equalsIgnoreCase("index") || baseName.equalsIgnoreCase("playlist")
+                    || baseName.equalsIgnoreCase("master")) {
+                baseName = "stream_" + index;
             }
-            System.out.println("完成");
-            System.out.println("  ✓ 已保存: " + filePath);
+            Path filePath = hlsDownloader.download(mediaUrl, outputDir, baseName);
+            System.out.println("  ✓ 已保存: " + filePath + " (" + Files.size(filePath) + " 字节)");
+            return filePath;
+        }
+
+        Path filePath = outputDir.resolve(filename);
+
+        // 保存文件（支持Range的服务器会分段并发下载，返回HTML页面时会中止）
+        long totalBytes = downloader.download(mediaUrl, filePath);
+
+        // 没有 .m3u8 扩展名的播放列表：改用HLS下载
+        if (MediaTypes.sniff(filePath) == MediaTypes.Type.M3U8) {
+            Files.delete(filePath);
+            String baseName = filename.contains(".") ? filename.substring(0, filename.lastIndexOf('.')) : filename;
+            Path hlsPath = hlsDownloader.download(mediaUrl, outputDir, baseName);
+            System.out.println("  ✓ 已保存: " + hlsPath + " (" + Files.size(hlsPath) + " 字节)");
+            return hlsPath;
         }
+
+        // 按文件内容修正扩展名
+        filePath = MediaTypes.correctExtension(filePath);
+        System.out.println("  ✓ 已保存: " + filePath + " (" + totalBytes + " 字节)");
+        return filePath;
     }
 
     /**
@@ -392,30 +508,19 @@ public class MediaDownloaderPro {
             String filename = cleanUrl.substring(cleanUrl.lastIndexOf("/") + 1);
 
             if (filename.isEmpty()) {
-                filename = "media_" + index + ".mp3";
+                // 没有文件名时暂不加扩展名，下载完成后按内容补上
+                filename = "media_" + index;
             } else {
                 // URL解码
                 filename = URLDecoder.decode(filename, "UTF-8");
-                // 统一为mp3格式
-                if (isAudioFile(filename)) {
-                    filename = filename.replaceAll("\\.(mp3|mp4|m4a|wav|ogg|aac|webm|flac)$", ".mp3");
-                }
             }
 
             return filename;
         } catch (Exception e) {
-            return "media_" + index + ".mp3";
+            return "media_" + index;
         }
     }
 
-    /**
-     * 判断是否是音频文件
-     */
-    private static boolean isAudioFile(String filename) {
-        String lowerName = filename.toLowerCase();
-        return lowerName.matches(".*\\.(mp3|mp4|m4a|wav|ogg|aac|webm|flac)$");
-    }
-
     /**
      * 打印使用说明
      */
@@ -424,26 +529,34 @@ public class MediaDownloaderPro {
         System.out.println("║      媒体下载器 Pro v2.0 (动态加载版)     ║");
         System.out.println("╚══════════════════════════════════════════╝");
         System.out.println();
-        System.out.println("用法: java MediaDownloaderPro <URL> [输出目录] [模式]");
+        System.out.println("用法: java MediaDownloaderPro <URL|页面列表文件|-> [输出目录] [模式]");
         System.out.println();
         System.out.println("参数:");
-        System.out.println("  <URL>          - 要访问的网页URL，必须");
+        System.out.println("  <URL>          - 要访问的网页URL，必须；也可以是页面列表文件，- 表示从标准输入读取（动态模式批量处理）");
+        System.out.println("                   列表每行一个URL，或一个JSON对象 {\"url\": \"...\", \"outputDir\": \"...\"}");
+        System.out.println("                   每个页面的结果写入 输出目录/batch-summary.jsonl（-Dmedia.batch.summary 可指定）");
         System.out.println("  [输出目录]     - 媒体文件保存的目录，默认为 ./downloads");
-        System.out.println("  [模式]         - dynamic(动态,默认) 或 static(静态)");
+        System.out.println("  [模式]         - dynamic(动态,默认)、static(静态) 或 auto(自动: 先静态解析，找不到媒体或页面需要脚本渲染时使用浏览器)");
         System.out.println();
         System.out.println("示例:");
         System.out.println("  java MediaDownloaderPro https://example.com/page");
         System.out.println("  java MediaDownloaderPro https://example.com/page \"D:\\\\Downloads\" dynamic");
         System.out.println("  java MediaDownloaderPro https://example.com/page \"./output\" static");
+        System.out.println("  java MediaDownloaderPro pages.txt \"./output\" auto");
         System.out.println();
         System.out.println("功能特性:");
         System.out.println("  ✓ 支持JavaScript动态加载的媒体");
+        System.out.println("  ✓ 通过DevTools抓取页面发出的媒体请求（含 fetch/XHR 和流媒体播放器）");
         System.out.println("  ✓ 自动识别HTML媒体标签");
         System.out.println("  ✓ 执行JavaScript获取媒体对象");
         System.out.println("  ✓ 支持相对和绝对URL");
         System.out.println("  ✓ 支持音频和视频格式");
         System.out.println();
         System.out.println("注意: 动态模式需要安装ChromeDriver (会自动下载)");
+        System.out.println("      浏览器实例数: -Dmedia.browser.poolSize (默认 " + BrowserPool.DEFAULT_SIZE + ")，"
+                + "显示浏览器窗口: -Dmedia.browser.headless=false");
+        System.out.println("      页面就绪最长等待: -Dmedia.page.maxWaitSeconds (默认 30)，"
+                + "站点就绪选择器: -Dmedia.page.readySelectors=\"example.com=video;foo.com=.player\"");
         System.out.println();
     }
 }
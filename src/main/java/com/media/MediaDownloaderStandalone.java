@@ -2,17 +2,28 @@ package com.media;
 
 import java.io.*;
 import java.net.*;
-import java.nio.charset.StandardCharsets;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.file.*;
 import java.util.*;
-import java.util.regex.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 /**
  * 媒体下载器 - 无依赖版本（仅使用标准库）
- * 从网页中下载媒体文件并保存为mp3
+ * 从网页中下载媒体文件，按文件内容确定扩展名
+ * 所有请求共用一个JDK HttpClient，连接在请求之间复用，服务器支持时使用HTTP/2
  */
 public class MediaDownloaderStandalone {
     private static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36";
+    private static final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(java.time.Duration.ofSeconds(30))
+            .build();
 
     public static void main(String[] args) {
         if (args.length == 0) {
@@ -42,168 +53,74 @@ public class MediaDownloaderStandalone {
         Path outputPath = Paths.get(outputDir);
         Files.createDirectories(outputPath);
 
-        // 获取网页内容
-        String htmlContent = fetchHtmlContent(url);
-        System.out.println("✓ 成功获取网页内容");
-
-        // 解析媒体链接
-        Set<String> mediaUrls = extractMediaUrls(htmlContent, url);
-
-        if (mediaUrls.isEmpty()) {
-            System.out.println("⚠ 未找到媒体文件");
-            return;
-        }
-
-        System.out.println("✓ 找到 " + mediaUrls.size() + " 个媒体文件");
-
-        // 下载媒体文件
-        int count = 1;
-        for (String mediaUrl : mediaUrls) {
-            try {
-                System.out.println("\n[" + count + "/" + mediaUrls.size() + "] 下载: " + mediaUrl);
-                downloadAndSaveMedia(mediaUrl, outputPath, count);
-                count++;
-            } catch (Exception e) {
-                System.err.println("✗ 下载失败: " + mediaUrl);
-                System.err.println("  错误: " + e.getMessage());
-            }
-        }
-
-        System.out.println("\n✓ 下载完成！");
-    }
-
-    /**
-     * 获取网页内容
-     */
-    private static String fetchHtmlContent(String urlStr) throws IOException {
-        URL url = new URL(urlStr);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestProperty("User-Agent", USER_AGENT);
-        conn.setConnectTimeout(30000);
-        conn.setReadTimeout(30000);
-
-        if (conn.getResponseCode() != HttpURLConnection.HTTP_OK) {
-            throw new IOException("HTTP请求失败: " + conn.getResponseCode());
-        }
+        // 边接收网页边解析媒体链接，每找到一个立即交给下载线程（按发现顺序逐个下载）
+        ExecutorService downloads = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "media-download");
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<Future<?>> tasks = new ArrayList<>();
+        Set<String> mediaUrls;
+        try {
+            mediaUrls = streamMediaUrls(url, mediaUrl -> {
+                int index = tasks.size() + 1;
+                tasks.add(downloads.submit(() -> {
+                    try {
+                        System.out.println("\n[" + index + "] 下载: " + mediaUrl);
+                        downloadAndSaveMedia(mediaUrl, outputPath, index);
+                    } catch (Exception e) {
+                        System.err.println("✗ 下载失败: " + mediaUrl);
+                        System.err.println("  错误: " + e.getMessage());
+                    }
+                }));
+            });
+            System.out.println("✓ 成功获取网页内容");
 
-        StringBuilder content = new StringBuilder();
-        try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                content.append(line).append("\n");
+            if (mediaUrls.isEmpty()) {
+                System.out.println("⚠ 未找到媒体文件");
+                return;
             }
-        }
-
-        return content.toString();
-    }
-
-    /**
-     * 从HTML中提取媒体URL
-     */
-    private static Set<String> extractMediaUrls(String htmlContent, String baseUrl) throws MalformedURLException {
-        Set<String> mediaUrls = new LinkedHashSet<>();
-
-        // 提取 <audio> 标签中的 src 属性
-        Pattern audioPattern = Pattern.compile("<audio[^>]*src=[\"']([^\"']+)[\"']", Pattern.CASE_INSENSITIVE);
-        Matcher matcher = audioPattern.matcher(htmlContent);
-        while (matcher.find()) {
-            String src = matcher.group(1);
-            mediaUrls.add(resolveUrl(src, baseUrl));
-        }
 
-        // 提取 <audio><source src="..."/>  </audio>
-        Pattern audioSourcePattern = Pattern.compile("<source[^>]*src=[\"']([^\"']+)[\"'][^>]*>", Pattern.CASE_INSENSITIVE);
-        matcher = audioSourcePattern.matcher(htmlContent);
-        while (matcher.find()) {
-            String src = matcher.group(1);
-            if (isMediaFile(src) && !src.contains("video")) {
-                mediaUrls.add(resolveUrl(src, baseUrl));
+            System.out.println("✓ 找到 " + mediaUrls.size() + " 个媒体文件");
+            for (Future<?> task : tasks) {
+                task.get();
             }
+        } finally {
+            downloads.shutdownNow();
         }
 
-        // 提取 <video> 标签中的 src 属性
-        Pattern videoPattern = Pattern.compile("<video[^>]*src=[\"']([^\"']+)[\"']", Pattern.CASE_INSENSITIVE);
-        matcher = videoPattern.matcher(htmlContent);
-        while (matcher.find()) {
-            String src = matcher.group(1);
-            mediaUrls.add(resolveUrl(src, baseUrl));
-        }
-
-        // 提取 <a> 标签中指向媒体文件的链接
-        Pattern linkPattern = Pattern.compile("<a[^>]*href=[\"']([^\"']+\\.(?:mp3|mp4|m4a|wav|ogg|webm|aac|flac))([\"'][^>]*)?>", Pattern.CASE_INSENSITIVE);
-        matcher = linkPattern.matcher(htmlContent);
-        while (matcher.find()) {
-            String href = matcher.group(1);
-            mediaUrls.add(resolveUrl(href, baseUrl));
-        }
-
-        // 从JavaScript代码中提取媒体URL
-        Pattern jsUrlPattern = Pattern.compile("(?:url|src|source|media)\\s*[:=]\\s*[\"']+(https?://[^\"'\\s;,]+\\.(?:mp3|mp4|m4a|wav|ogg|webm|aac|flac))", Pattern.CASE_INSENSITIVE);
-        matcher = jsUrlPattern.matcher(htmlContent);
-        while (matcher.find()) {
-            String url = matcher.group(1);
-            mediaUrls.add(url);
-        }
-
-        // 从JSON中提取媒体URL
-        Pattern jsonUrlPattern = Pattern.compile("\"(https?://[^\"]+(?:\\.mp3|\\.mp4|\\.m4a|\\.wav|\\.ogg|\\.webm|\\.aac|\\.flac))\"");
-        matcher = jsonUrlPattern.matcher(htmlContent);
-        while (matcher.find()) {
-            String url = matcher.group(1);
-            mediaUrls.add(url);
-        }
-
-        return mediaUrls;
-    }
-
-    /**
-     * 判断是否是媒体文件
-     */
-    private static boolean isMediaFile(String url) {
-        String lowerUrl = url.toLowerCase();
-        return lowerUrl.matches(".*\\.(mp3|mp4|m4a|wav|ogg|webm|aac|flac)($|\\?)");
+        System.out.println("\n✓ 下载完成！");
     }
 
     /**
-     * 解析相对URL为绝对URL
+     * 流式获取网页并解析媒体链接：不把整页读入内存，每个URL第一次出现时立即回调
+     * 页面大小受 -Dmedia.html.maxPageBytes 限制
      */
-    private static String resolveUrl(String url, String baseUrl) throws MalformedURLException {
-        if (url.startsWith("http://") || url.startsWith("https://")) {
-            return url;
-        }
-
-        if (url.startsWith("//")) {
-            String protocol = baseUrl.startsWith("https") ? "https:" : "http:";
-            return protocol + url;
-        }
-
-        URL baseUrlObj = new URL(baseUrl);
+    private static Set<String> streamMediaUrls(String urlStr, Consumer<String> onUrl) throws IOException {
+        HttpResponse<InputStream> response = send(urlStr, 30);
 
-        if (url.startsWith("/")) {
-            return baseUrlObj.getProtocol() + "://" + baseUrlObj.getHost() + url;
+        if (response.statusCode() != 200) {
+            response.body().close();
+            throw new IOException("HTTP请求失败: " + response.statusCode());
         }
 
-        // 相对URL
-        String basePath = baseUrlObj.getPath();
-        if (!basePath.endsWith("/")) {
-            basePath = basePath.substring(0, basePath.lastIndexOf("/") + 1);
+        String contentType = response.headers().firstValue("Content-Type").orElse(null);
+        long contentLength = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+        try (Reader reader = PageStream.open(response.body(), contentType, contentLength)) {
+            // 重定向后以最终地址解析相对路径
+            return PageStream.scan(reader, response.uri().toString(), onUrl);
         }
-        return baseUrlObj.getProtocol() + "://" + baseUrlObj.getHost() + basePath + url;
     }
 
     /**
      * 下载并保存媒体文件
      */
     private static void downloadAndSaveMedia(String mediaUrl, Path outputDir, int index) throws IOException {
-        URL url = new URL(mediaUrl);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestProperty("User-Agent", USER_AGENT);
-        conn.setConnectTimeout(30000);
-        conn.setReadTimeout(60000);
+        HttpResponse<InputStream> response = send(mediaUrl, 60);
 
-        if (conn.getResponseCode() != HttpURLConnection.HTTP_OK) {
-            throw new IOException("下载失败: HTTP " + conn.getResponseCode());
+        if (response.statusCode() != 200) {
+            response.body().close();
+            throw new IOException("下载失败: HTTP " + response.statusCode());
         }
 
         // 获取文件名
@@ -211,15 +128,25 @@ public class MediaDownloaderStandalone {
         Path filePath = outputDir.resolve(filename);
 
         // 保存文件
-        try (InputStream is = conn.getInputStream();
+        String contentType = response.headers().firstValue("Content-Type").orElse(null);
+        try (InputStream is = response.body();
              FileOutputStream fos = new FileOutputStream(filePath.toFile())) {
             byte[] buffer = new byte[8192];
             int bytesRead;
             long totalBytes = 0;
-            long contentLength = conn.getContentLengthLong();
+            long contentLength = response.headers().firstValueAsLong("Content-Length").orElse(-1);
 
             System.out.print("  进度: ");
             while ((bytesRead = is.read(buffer)) != -1) {
+                if (totalBytes == 0) {
+                    // 第一个数据块：HTML错误页不是媒体，立即放弃
+                    MediaTypes.Type type = MediaTypes.sniff(java.nio.ByteBuffer.wrap(buffer, 0, bytesRead));
+                    if (type == MediaTypes.Type.HTML
+                            || (type == null && MediaTypes.fromContentType(contentType) == MediaTypes.Type.HTML)) {
+                        System.out.println();
+                        throw new IOException("返回的是HTML页面而不是媒体文件");
+                    }
+                }
                 fos.write(buffer, 0, bytesRead);
                 totalBytes += bytesRead;
 
@@ -231,7 +158,31 @@ public class MediaDownloaderStandalone {
                 }
             }
             System.out.println("完成");
-            System.out.println("  ✓ 已保存: " + filePath);
+        } catch (IOException e) {
+            Files.deleteIfExists(filePath);
+            throw e;
+        }
+
+        // 按文件内容修正扩展名
+        filePath = MediaTypes.correctExtension(filePath);
+        System.out.println("  ✓ 已保存: " + filePath);
+    }
+
+    /**
+     * 通过共享客户端发送GET请求，响应体以流的方式读取
+     * @param timeoutSeconds 等待响应的超时时间（秒）
+     */
+    private static HttpResponse<InputStream> send(String url, int timeoutSeconds) throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .header("User-Agent", USER_AGENT)
+                .timeout(java.time.Duration.ofSeconds(timeoutSeconds))
+                .GET()
+                .build();
+        try {
+            return client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("请求被中断: " + url);
         }
     }
 
@@ -245,30 +196,19 @@ public class MediaDownloaderStandalone {
             String filename = cleanUrl.substring(cleanUrl.lastIndexOf("/") + 1);
 
             if (filename.isEmpty()) {
-                filename = "media_" + index + ".mp3";
+                // 没有文件名时暂不加扩展名，下载完成后按内容补上
+                filename = "media_" + index;
             } else {
                 // URL解码
                 filename = URLDecoder.decode(filename, "UTF-8");
-                // 统一为mp3格式
-                if (isAudioFile(filename)) {
-                    filename = filename.replaceAll("\\.(mp3|mp4|m4a|wav|ogg|aac|webm|flac)$", ".mp3");
-                }
             }
 
             return filename;
         } catch (Exception e) {
-            return "media_" + index + ".mp3";
+            return "media_" + index;
         }
     }
 
-    /**
-     * 判断是否是音频文件
-     */
-    private static boolean isAudioFile(String filename) {
-        String lowerName = filename.toLowerCase();
-        return lowerName.matches(".*\\.(mp3|mp4|m4a|wav|ogg|aac|webm|flac)$");
-    }
-
     /**
      * 打印使用说明
      */
@@ -0,0 +1,259 @@
+package com.media;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 内容寻址的媒体库 - 按SHA-256把下载内容只保存一份
+ * 每个页面目录下的文件以硬链接（不支持时用符号链接，再不行则复制）指向同一个blob，
+ * 索引记录已下载的URL，重复出现的URL无需再次下载，不同URL的相同内容下载后按SHA-256合并；多个页面同时获取同一URL时只下载一次，其余等待后各自建立链接
+ *
+ * 目录结构:
+ *   <输出目录>/.media-store/blobs/ab/abcdef...   - 内容文件
+ *   <输出目录>/.media-store/staging/              - 下载中的临时文件（支持断点续传）
+ *   <输出目录>/.media-store/index.jsonl           - 追加写入的索引
+ */
+public class MediaStore {
+    private static final Logger logger = LoggerFactory.getLogger(MediaStore.class);
+    private static final String STORE_DIR = ".media-store";
+    private static final Gson GSON = new Gson();
+
+    private final Path blobDir;
+    private final Path stagingDir;
+    private final Path indexFile;
+    private final SegmentedDownloader downloader;
+
+    private final Map<String, Entry> byUrl = new HashMap<>();
+    private final Map<String, CompletableFuture<Entry>> downloading = new ConcurrentHashMap<>(); // 正在下载的URL
+
+    /**
+     * 索引记录
+     */
+    static class Entry {
+        String url;
+        String sha256;
+        long size;
+    }
+
+    /**
+     * 一次获取的结果
+     */
+    public static class Result {
+        public final Path path;
+        public final String sha256;
+        public final long size;
+        public final boolean downloaded; // false 表示命中索引，未重新下载
+
+        Result(Path path, String sha256, long size, boolean downloaded) {
+            this.path = path;
+            this.sha256 = sha256;
+            this.size = size;
+            this.downloaded = downloaded;
+        }
+    }
+
+    public MediaStore(Path outputRoot, SegmentedDownloader downloader) throws IOException {
+        Path storeDir = outputRoot.resolve(STORE_DIR);
+        this.blobDir = storeDir.resolve("blobs");
+        this.stagingDir = storeDir.resolve("staging");
+        this.indexFile = storeDir.resolve("index.jsonl");
+        this.downloader = downloader;
+
+        Files.createDirectories(blobDir);
+        Files.createDirectories(stagingDir);
+        loadIndex();
+    }
+
+    /**
+     * 获取媒体并在 linkPath 处建立指向blob的链接
+     * URL已在索引中且blob存在时直接建立链接，否则下载并计算SHA-256后入库
+     * 不同URL即使ETag相同也各自下载：ETag只在同一资源内有意义，不能证明两个URL的内容相同
+     */
+    public Result fetch(String url, Path linkPath) throws IOException {
+        Entry known = lookupUrl(url);
+        if (known != null) {
+            link(blobPath(known.sha256), linkPath);
+            return new Result(linkPath, known.sha256, known.size, false);
+        }
+
+        // 同一URL正在被其他任务下载时等待它完成，共用下载结果
+        CompletableFuture<Entry> download = new CompletableFuture<>();
+        CompletableFuture<Entry> running = downloading.putIfAbsent(url, download);
+        if (running != null) {
+            Entry entry = await(url, running);
+            link(blobPath(entry.sha256), linkPath);
+            return new Result(linkPath, entry.sha256, entry.size, false);
+        }
+        Entry entry;
+        boolean downloaded = false;
+        try {
+            // 其他任务可能在本任务查索引之后刚刚完成
+            entry = lookupUrl(url);
+            if (entry == null) {
+                entry = download(url);
+                downloaded = true;
+            }
+            download.complete(entry);
+        } catch (IOException | RuntimeException e) {
+            download.completeExceptionally(e);
+            throw e;
+        } finally {
+            downloading.remove(url, download);
+        }
+        link(blobPath(entry.sha256), linkPath);
+        return new Result(linkPath, entry.sha256, entry.size, downloaded);
+    }
+
+    /**
+     * 下载到以URL摘要命名的临时文件（中断后下次运行可以续传），计算SHA-256后移入blob并记录
+     */
+    private Entry download(String url) throws IOException {
+        Path staging = stagingDir.resolve(sha256Hex(url));
+        ContentHasher hasher = new ContentHasher();
+        long size = downloader.download(url, staging, null, hasher);
+        String sha256 = hasher.finish(staging);
+
+        Path blob = blobPath(sha256);
+        if (Files.exists(blob)) {
+            // 不同URL的相同内容
+            Files.delete(staging);
+        } else {
+            Files.createDirectories(blob.getParent());
+            try {
+                Files.move(staging, blob, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(staging, blob, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+        return record(url, sha256, size);
+    }
+
+    /**
+     * 等待其他任务对同一URL的下载
+     */
+    private static Entry await(String url, CompletableFuture<Entry> running) throws IOException {
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待下载被中断: " + url);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw new IOException("同一URL的下载失败: " + cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * linkPath 是否已经是该URL已下载内容的链接
+     */
+    public boolean holds(String url, Path linkPath) throws IOException {
+        Entry entry = lookupUrl(url);
+        return entry != null && Files.exists(linkPath) && Files.isSameFile(blobPath(entry.sha256), linkPath);
+    }
+
+    private synchronized Entry lookupUrl(String url) {
+        Entry entry = byUrl.get(url);
+        return entry != null && Files.exists(blobPath(entry.sha256)) ? entry : null;
+    }
+
+    /**
+     * 记录到内存索引并追加写入索引文件
+     */
+    private synchronized Entry record(String url, String sha256, long size) throws IOException {
+        Entry entry = new Entry();
+        entry.url = url;
+        entry.sha256 = sha256;
+        entry.size = size;
+        index(entry);
+
+        try (BufferedWriter writer = Files.newBufferedWriter(indexFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            writer.write(GSON.toJson(entry));
+            writer.newLine();
+        }
+        return entry;
+    }
+
+    private void index(Entry entry) {
+        byUrl.put(entry.url, entry);
+    }
+
+    private void loadIndex() throws IOException {
+        if (!Files.exists(indexFile)) {
+            return;
+        }
+        List<String> lines = Files.readAllLines(indexFile, StandardCharsets.UTF_8);
+        for (String line : lines) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            try {
+                Entry entry = GSON.fromJson(line, Entry.class);
+                if (entry != null && entry.url != null && entry.sha256 != null) {
+                    index(entry);
+                }
+            } catch (JsonParseException e) {
+                // 进程被中断时最后一行可能不完整
+                logger.warn("跳过损坏的索引行: {}", line);
+            }
+        }
+        logger.info("媒体库索引已加载: {} 个URL", byUrl.size());
+    }
+
+    /**
+     * 在 linkPath 处建立指向blob的硬链接，依次回退到符号链接和复制
+     */
+    private static void link(Path blob, Path linkPath) throws IOException {
+        Files.createDirectories(linkPath.getParent());
+        if (Files.exists(linkPath, LinkOption.NOFOLLOW_LINKS)) {
+            if (Files.exists(linkPath) && Files.isSameFile(blob, linkPath)) {
+                return;
+            }
+            Files.delete(linkPath);
+        }
+
+        try {
+            Files.createLink(linkPath, blob);
+            return;
+        } catch (UnsupportedOperationException | IOException e) {
+            logger.debug("无法创建硬链接，尝试符号链接: {}", linkPath, e);
+        }
+        try {
+            Files.createSymbolicLink(linkPath, linkPath.getParent().relativize(blob));
+            return;
+        } catch (UnsupportedOperationException | IOException e) {
+            logger.debug("无法创建符号链接，改为复制: {}", linkPath, e);
+        }
+        Files.copy(blob, linkPath, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Path blobPath(String sha256) {
+        return blobDir.resolve(sha256.substring(0, 2)).resolve(sha256);
+    }
+
+    private static String sha256Hex(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return ContentHasher.toHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("JVM不支持SHA-256", e);
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package com.media;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 媒体类型识别 - 依次根据文件扩展名、响应的 Content-Type 和文件头的魔数判断类型（仅依赖标准库）
+ * 用于给下载的文件取正确的扩展名，以及在"媒体"链接实际返回HTML错误页时尽早放弃下载
+ */
+public final class MediaTypes {
+    public static final int SNIFF_LENGTH = 512; // 嗅探时读取的文件头长度
+
+    /**
+     * 类别
+     */
+    public enum Kind {
+        AUDIO, VIDEO, PLAYLIST, DOCUMENT
+    }
+
+    /**
+     * 已知的类型
+     */
+    public enum Type {
+        MP3(".mp3", Kind.AUDIO, "audio/mpeg"),
+        M4A(".m4a", Kind.AUDIO, "audio/mp4"),
+        AAC(".aac", Kind.AUDIO, "audio/aac"),
+        WAV(".wav", Kind.AUDIO, "audio/wav"),
+        OGG(".ogg", Kind.AUDIO, "audio/ogg"),
+        FLAC(".flac", Kind.AUDIO, "audio/flac"),
+        MP4(".mp4", Kind.VIDEO, "video/mp4"),
+        WEBM(".webm", Kind.VIDEO, "video/webm"),
+        MPEG_TS(".ts", Kind.VIDEO, "video/mp2t"),
+        M3U8(".m3u8", Kind.PLAYLIST, "application/vnd.apple.mpegurl"),
+        HTML(".html", Kind.DOCUMENT, "text/html");
+
+        private final String extension;
+        private final Kind kind;
+        private final String mimeType;
+
+        Type(String extension, Kind kind, String mimeType) {
+            this.extension = extension;
+            this.kind = kind;
+            this.mimeType = mimeType;
+        }
+
+        public String extension() {
+            return extension;
+        }
+
+        public Kind kind() {
+            return kind;
+        }
+
+        public String mimeType() {
+            return mimeType;
+        }
+
+        /**
+         * 是否是可下载的媒体（音频、视频或播放列表）
+         */
+        public boolean isMedia() {
+            return kind != Kind.DOCUMENT;
+        }
+    }
+
+    // ISO BMFF（MP4）容器的扩展名：ftyp 品牌不能可靠区分音频和视频，扩展名已属于这一族时不修改
+    private static final Set<String> ISO_BMFF_EXTENSIONS = new HashSet<>(Arrays.asList("mp4", "m4a", "m4b", "m4v", "mov"));
+
+    private static final Map<String, Type> BY_EXTENSION = new HashMap<>();
+    private static final Map<String, Type> BY_MIME_TYPE = new HashMap<>();
+
+    static {
+        for (Type type : Type.values()) {
+            BY_EXTENSION.put(type.extension.substring(1), type);
+            BY_MIME_TYPE.put(type.mimeType, type);
+        }
+        BY_EXTENSION.put("m3u", Type.M3U8);
+        BY_EXTENSION.put("m4b", Type.M4A);
+        BY_EXTENSION.put("oga", Type.OGG);
+        BY_EXTENSION.put("m4v", Type.MP4);
+        BY_EXTENSION.put("htm", Type.HTML);
+
+        BY_MIME_TYPE.put("audio/mp3", Type.MP3);
+        BY_MIME_TYPE.put("audio/x-m4a", Type.M4A);
+        BY_MIME_TYPE.put("audio/aacp", Type.AAC);
+        BY_MIME_TYPE.put("audio/x-aac", Type.AAC);
+        BY_MIME_TYPE.put("audio/x-wav", Type.WAV);
+        BY_MIME_TYPE.put("audio/wave", Type.WAV);
+        BY_MIME_TYPE.put("audio/x-flac", Type.FLAC);
+        BY_MIME_TYPE.put("audio/webm", Type.WEBM);
+        BY_MIME_TYPE.put("video/ogg", Type.OGG);
+        BY_MIME_TYPE.put("application/ogg", Type.OGG);
+        BY_MIME_TYPE.put("application/x-mpegurl", Type.M3U8);
+        BY_MIME_TYPE.put("audio/mpegurl", Type.M3U8);
+        BY_MIME_TYPE.put("audio/x-mpegurl", Type.M3U8);
+        BY_MIME_TYPE.put("application/xhtml+xml", Type.HTML);
+    }
+
+    private MediaTypes() {
+    }
+
+    /**
+     * 根据URL或文件名的扩展名判断类型（忽略查询参数和片段），未知时返回null
+     */
+    public static Type fromExtension(String urlOrName) {
+        if (urlOrName == null) {
+            return null;
+        }
+        int end = urlOrName.length();
+        for (int i = 0; i < end; i++) {
+            char c = urlOrName.charAt(i);
+            if (c == '?' || c == '#') {
+                end = i;
+                break;
+            }
+        }
+        int dot = urlOrName.lastIndexOf('.', end - 1);
+        if (dot < 0 || dot < urlOrName.lastIndexOf('/', end - 1)) {
+            return null;
+        }
+        return BY_EXTENSION.get(urlOrName.substring(dot + 1, end).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * 根据 Content-Type 响应头判断类型，未知时返回null
+     */
+    public static Type fromContentType(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        int semicolon = contentType.indexOf(';');
+        String mimeType = (semicolon >= 0 ? contentType.substring(0, semicolon) : contentType)
+                .trim().toLowerCase(Locale.ROOT);
+        return BY_MIME_TYPE.get(mimeType);
+    }
+
+    /**
+     * URL的扩展名是否是媒体类型
+     */
+    public static boolean isMediaUrl(String url) {
+        Type type = fromExtension(url);
+        return type != null && type.isMedia();
+    }
+
+    /**
+     * URL的扩展名是否是音频类型
+     */
+    public static boolean isAudioUrl(String url) {
+        Type type = fromExtension(url);
+        return type != null && type.kind() == Kind.AUDIO;
+    }
+
+    /**
+     * 根据文件头的魔数判断类型，无法识别时返回null
+     * @param head 文件开头的数据（从position到limit），不会改变其位置
+     */
+    public static Type sniff(ByteBuffer head) {
+        ByteBuffer data = head.duplicate();
+        int offset = data.position();
+        int length = data.remaining();
+
+        // 跳过UTF-8 BOM和开头的空白（文本类型）
+        int text = 0;
+        if (length >= 3 && u8(data, offset) == 0xEF && u8(data, offset + 1) == 0xBB && u8(data, offset + 2) == 0xBF) {
+            text = 3;
+        }
+        while (text < length && Character.isWhitespace(u8(data, offset + text))) {
+            text++;
+        }
+
+        if (startsWith(data, offset, length, 0, "ID3")) {
+            return Type.MP3;
+        }
+        if (startsWith(data, offset, length, 4, "ftyp")) {
+            String brand = length >= 12 ? ascii(data, offset + 8, 4) : "";
+            return brand.startsWith("M4A") || brand.startsWith("M4B") ? Type.M4A : Type.MP4;
+        }
+        if (startsWith(data, offset, length, 0, "OggS")) {
+            return Type.OGG;
+        }
+        if (startsWith(data, offset, length, 0, "fLaC")) {
+            return Type.FLAC;
+        }
+        if (startsWith(data, offset, length, 0, "RIFF") && startsWith(data, offset, length, 8, "WAVE")) {
+            return Type.WAV;
+        }
+        if (length >= 4 && u8(data, offset) == 0x1A && u8(data, offset + 1) == 0x45
+                && u8(data, offset + 2) == 0xDF && u8(data, offset + 3) == 0xA3) {
+            return Type.WEBM;
+        }
+        if (length >= 2 && u8(data, offset) == 0xFF && (u8(data, offset + 1) & 0xE0) == 0xE0) {
+            // 帧同步字：layer位为00的是AAC的ADTS头，否则是MPEG音频
+            return (u8(data, offset + 1) & 0x06) == 0 ? Type.AAC : Type.MP3;
+        }
+        if (length >= 189 && u8(data, offset) == 0x47 && u8(data, offset + 188) == 0x47) {
+            return Type.MPEG_TS;
+        }
+        if (startsWith(data, offset, length, text, "#EXTM3U")) {
+            return Type.M3U8;
+        }
+        if (looksLikeHtml(data, offset + text, length - text)) {
+            return Type.HTML;
+        }
+        return null;
+    }
+
+    /**
+     * 读取文件头判断类型，无法识别时返回null
+     */
+    public static Type sniff(Path file) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(SNIFF_LENGTH);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (head.hasRemaining() && channel.read(head, head.position()) > 0) {
+                // 读满或读到文件末尾
+            }
+        }
+        head.flip();
+        return sniff(head);
+    }
+
+    /**
+     * 按文件内容修正扩展名：内容能识别为媒体类型且与扩展名不一致时重命名；
+     * MP4 一族（mp4/m4a/m4b/m4v/mov）之间不修改，目标文件名已存在时加 _1、_2 等后缀，不覆盖其他文件
+     * @return 修正后的文件路径（未修改时返回原路径）
+     */
+    public static Path correctExtension(Path file) throws IOException {
+        Type detected = sniff(file);
+        String name = file.getFileName().toString();
+        if (detected == null || !detected.isMedia() || detected == fromExtension(name)) {
+            return file;
+        }
+        int dot = name.lastIndexOf('.');
+        String suffix = dot >= 0 ? name.substring(dot + 1).toLowerCase(Locale.ROOT) : "";
+        if ((detected == Type.MP4 || detected == Type.M4A) && ISO_BMFF_EXTENSIONS.contains(suffix)) {
+            return file;
+        }
+        Type current = fromExtension(name);
+        String baseName = current != null ? name.substring(0, dot) : name;
+        Path corrected = file.resolveSibling(baseName + detected.extension());
+        for (int counter = 1; ; counter++) {
+            try {
+                Files.move(file, corrected);
+                return corrected;
+            } catch (FileAlreadyExistsException e) {
+                corrected = file.resolveSibling(baseName + "_" + counter + detected.extension());
+            }
+        }
+    }
+
+    private static boolean looksLikeHtml(ByteBuffer data, int offset, int length) {
+        if (length < 5 || u8(data, offset) != '<') {
+            return false;
+        }
+        String start = ascii(data, offset, Math.min(length, 15)).toLowerCase(Locale.ROOT);
+        return start.startsWith("<!doctype html") || start.startsWith("<html") || start.startsWith("<head")
+                || start.startsWith("<body") || start.startsWith("<!--") || start.startsWith("<title")
+                || start.startsWith("<script") || start.startsWith("<meta");
+    }
+
+    private static boolean startsWith(ByteBuffer data, int offset, int length, int at, String magic) {
+        if (at + magic.length() > length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length(); i++) {
+            if (u8(data, offset + at + i) != magic.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String ascii(ByteBuffer data, int offset, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = data.get(offset + i);
+        }
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    private static int u8(ByteBuffer data, int index) {
+        return data.get(index) & 0xFF;
+    }
+}
@@ -0,0 +1,430 @@
+package com.media;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * 媒体URL扫描器 - 单次遍历HTML/JavaScript文本提取媒体链接（仅依赖标准库）
+ * 用多模式自动机（Aho-Corasick）同时匹配所有媒体扩展名和 &lt;audio&gt;/&lt;video&gt;/&lt;source&gt; 标签，
+ * 命中后向两侧扩展到URL边界；没有回溯，耗时与输入长度成线性关系，
+ * 可以直接扫描 Reader，只在内存中保留最近的一小段文本
+ */
+public final class MediaUrlScanner {
+    // 识别的媒体扩展名
+    static final String[] MEDIA_EXTENSIONS = {
+            ".mp3", ".mp4", ".m4a", ".wav", ".ogg", ".webm", ".aac", ".flac", ".m3u8"
+    };
+    // 无论src有无扩展名都提取的标签：<audio>、<video> 以及其中的 <source>；结束标签用于判断 <source> 是否在媒体元素内
+    private static final String[] MEDIA_TAGS = {"<audio", "<video", "<source", "</audio", "</video"};
+    private static final int SOURCE_TAG = 2; // MEDIA_TAGS 中 <source 的下标，之后的是结束标签
+
+    private static final int MAX_URL_LENGTH = 4096; // 向两侧扩展的最大长度
+    private static final int LOOKBEHIND = MAX_URL_LENGTH + 256; // 保留的已扫描文本长度（URL加属性名上下文）
+    private static final int READ_CHUNK = 64 * 1024;
+
+    private static final int ALPHABET = 128;
+    private static final int[][] GOTO;
+    private static final int[] OUTPUT; // 状态对应的模式编号，-1 表示无；每个模式都不是其他模式的后缀，因此只需一个
+    private static final String[] PATTERNS;
+
+    static {
+        PATTERNS = new String[MEDIA_EXTENSIONS.length + MEDIA_TAGS.length];
+        System.arraycopy(MEDIA_EXTENSIONS, 0, PATTERNS, 0, MEDIA_EXTENSIONS.length);
+        System.arraycopy(MEDIA_TAGS, 0, PATTERNS, MEDIA_EXTENSIONS.length, MEDIA_TAGS.length);
+
+        int maxStates = 1;
+        for (String pattern : PATTERNS) {
+            maxStates += pattern.length();
+        }
+        int[][] next = new int[maxStates][ALPHABET];
+        int[] output = new int[maxStates];
+        Arrays.fill(output, -1);
+        for (int[] row : next) {
+            Arrays.fill(row, -1);
+        }
+
+        // 构建字典树
+        int states = 1;
+        for (int p = 0; p < PATTERNS.length; p++) {
+            int state = 0;
+            for (char c : PATTERNS[p].toCharArray()) {
+                if (next[state][c] < 0) {
+                    next[state][c] = states++;
+                }
+                state = next[state][c];
+            }
+            output[state] = p;
+        }
+
+        // 按层计算失败指针，并把转移表补全为确定自动机
+        int[] fail = new int[states];
+        int[] queue = new int[states];
+        int head = 0;
+        int tail = 0;
+        for (int c = 0; c < ALPHABET; c++) {
+            if (next[0][c] < 0) {
+                next[0][c] = 0;
+            } else {
+                fail[next[0][c]] = 0;
+                queue[tail++] = next[0][c];
+            }
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            if (output[state] < 0) {
+                output[state] = output[fail[state]];
+            }
+            for (int c = 0; c < ALPHABET; c++) {
+                int child = next[state][c];
+                if (child < 0) {
+                    next[state][c] = next[fail[state]][c];
+                } else {
+                    fail[child] = next[fail[state]][c];
+                    queue[tail++] = child;
+                }
+            }
+        }
+
+        GOTO = Arrays.copyOf(next, states);
+        OUTPUT = Arrays.copyOf(output, states);
+    }
+
+    private MediaUrlScanner() {
+    }
+
+    /**
+     * 扫描文本，返回去重后的绝对URL（保持出现顺序）
+     */
+    public static Set<String> scan(CharSequence text, String baseUrl) {
+        Set<String> urls = new LinkedHashSet<>();
+        try {
+            new Scan(new Window(text), baseUrl, urls::add).run();
+        } catch (IOException e) {
+            // CharSequence 不会抛出IO异常
+            throw new IllegalStateException(e);
+        }
+        return urls;
+    }
+
+    /**
+     * 扫描字符流，返回去重后的绝对URL（保持出现顺序）
+     */
+    public static Set<String> scan(Reader reader, String baseUrl) throws IOException {
+        Set<String> urls = new LinkedHashSet<>();
+        scan(reader, baseUrl, urls::add);
+        return urls;
+    }
+
+    /**
+     * 扫描字符流，每找到一个URL立即回调（可能重复）
+     */
+    public static void scan(Reader reader, String baseUrl, Consumer<String> sink) throws IOException {
+        new Scan(new Window(reader), baseUrl, sink).run();
+    }
+
+    /**
+     * 一次扫描的状态
+     */
+    private static final class Scan {
+        private final Window window;
+        private final URI base;
+        private final Consumer<String> sink;
+        private int mediaDepth; // 当前所在的 <audio>/<video> 元素层数
+
+        Scan(Window window, String baseUrl, Consumer<String> sink) {
+            this.window = window;
+            this.base = parseBase(baseUrl);
+            this.sink = sink;
+        }
+
+        void run() throws IOException {
+            int state = 0;
+            long pos = 0;
+            for (int c; (c = window.charAt(pos)) >= 0; pos++) {
+                state = GOTO[state][lower(c)];
+                int pattern = OUTPUT[state];
+                if (pattern >= 0) {
+                    String found = PATTERNS[pattern];
+                    long start = pos - found.length() + 1;
+                    if (pattern < MEDIA_EXTENSIONS.length) {
+                        onExtension(start, pos + 1);
+                    } else {
+                        onMediaTag(pattern - MEDIA_EXTENSIONS.length, pos + 1);
+                    }
+                }
+                if ((pos & 0xFFF) == 0) {
+                    window.discardBefore(pos - LOOKBEHIND);
+                }
+            }
+        }
+
+        /**
+         * 扩展名命中：扩展名之后必须是URL的结尾、查询参数或片段，然后向两侧扩展出完整URL
+         */
+        private void onExtension(long extStart, long extEnd) throws IOException {
+            int after = window.charAt(extEnd);
+            if (after >= 0 && (Character.isLetterOrDigit(after) || after == '_' || after == '-' || after == '/')) {
+                return; // 例如 .mp4x、.mp3-player.js 或 /a.mp4/index.html
+            }
+            if (after == '.' && Character.isLetterOrDigit(Math.max(0, window.charAt(extEnd + 1)))) {
+                return; // 例如 .mp3.html
+            }
+
+            long start = extStart;
+            long limit = Math.max(window.firstAvailable(), extStart - MAX_URL_LENGTH);
+            while (start > limit && isUrlChar(window.charAt(start - 1))) {
+                start--;
+            }
+            long end = extEnd;
+            if (after == '?' || after == '#') {
+                long endLimit = extEnd + MAX_URL_LENGTH;
+                // 查询参数中允许分号（HTML中的 &amp;）
+                for (int c; end < endLimit && (c = window.charAt(end)) >= 0 && (c == ';' || isUrlChar(c)); end++) {
+                    // 向后扩展到URL结尾
+                }
+            }
+
+            String raw = window.substring(start, end);
+            boolean inAttribute = isAttributeValue(start);
+            emit(raw, inAttribute);
+        }
+
+        /**
+         * &lt;audio / &lt;video 标签及其中的 &lt;source 标签：提取 src 属性，不要求扩展名
+         */
+        private void onMediaTag(int tag, long afterName) throws IOException {
+            int c = window.charAt(afterName);
+            if (c < 0 || !(Character.isWhitespace(c) || c == '>' || c == '/')) {
+                return; // 例如 <audiox
+            }
+            if (tag > SOURCE_TAG) {
+                mediaDepth = Math.max(0, mediaDepth - 1);
+                return;
+            }
+            if (tag < SOURCE_TAG) {
+                mediaDepth++;
+            } else if (mediaDepth == 0) {
+                return; // <picture> 等元素中的 <source>
+            }
+            long pos = afterName;
+            long limit = afterName + MAX_URL_LENGTH;
+            while (pos < limit && (c = window.charAt(pos)) >= 0 && c != '>') {
+                if (Character.isWhitespace(window.charAt(pos - 1)) && matchesIgnoreCase(pos, "src")) {
+                    long valuePos = skipWhitespace(pos + 3);
+                    if (window.charAt(valuePos) == '=') {
+                        valuePos = skipWhitespace(valuePos + 1);
+                        int quote = window.charAt(valuePos);
+                        if (quote == '"' || quote == '\'') {
+                            long end = valuePos + 1;
+                            while (end < limit && (c = window.charAt(end)) >= 0 && c != quote) {
+                                end++;
+                            }
+                            String value = window.substring(valuePos + 1, end).trim();
+                            if (!value.isEmpty()) {
+                                emit(value, true);
+                            }
+                        }
+                    }
+                    return;
+                }
+                pos++;
+            }
+        }
+
+        private void emit(String raw, boolean inAttribute) {
+            String url = raw.replace("\\/", "/").replace("&amp;", "&");
+            while (url.endsWith(";")) {
+                url = url.substring(0, url.length() - 1);
+            }
+            String lower = url.toLowerCase();
+            if (!lower.startsWith("http")) {
+                // 例如 file=https://... 或 \u002Fhttps://...，从协议处截断
+                int scheme = lower.indexOf("http://");
+                int secure = lower.indexOf("https://");
+                int cut = scheme < 0 ? secure : secure < 0 ? scheme : Math.min(scheme, secure);
+                if (cut > 0) {
+                    url = url.substring(cut);
+                    lower = lower.substring(cut);
+                }
+            }
+            if (url.isEmpty() || lower.startsWith("data:") || lower.startsWith("blob:") || lower.startsWith("javascript:")) {
+                return;
+            }
+            if (lower.startsWith("http://") || lower.startsWith("https://")) {
+                sink.accept(url);
+            } else if (inAttribute || lower.startsWith("/")) {
+                // 相对地址只在属性值中才可信，脚本里的片段可能只是文件名；根路径和协议相对地址总是可信
+                String resolved = resolve(url);
+                if (resolved != null) {
+                    sink.accept(resolved);
+                }
+            }
+        }
+
+        /**
+         * 判断URL是否是HTML属性值（前面紧跟 =" 或 ='）
+         */
+        private boolean isAttributeValue(long urlStart) throws IOException {
+            long pos = urlStart - 1;
+            int quote = pos >= window.firstAvailable() ? window.charAt(pos) : -1;
+            if (quote != '"' && quote != '\'') {
+                return false;
+            }
+            pos--;
+            while (pos >= window.firstAvailable() && Character.isWhitespace(window.charAt(pos))) {
+                pos--;
+            }
+            return pos >= window.firstAvailable() && window.charAt(pos) == '=';
+        }
+
+        private String resolve(String url) {
+            if (base == null) {
+                return null;
+            }
+            try {
+                URI resolved = base.resolve(url.replace(" ", "%20"));
+                String scheme = resolved.getScheme();
+                return scheme != null && scheme.startsWith("http") ? resolved.toString() : null;
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+
+        private boolean matchesIgnoreCase(long pos, String text) throws IOException {
+            for (int i = 0; i < text.length(); i++) {
+                if (lower(window.charAt(pos + i)) != text.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private long skipWhitespace(long pos) throws IOException {
+            int c;
+            while ((c = window.charAt(pos)) >= 0 && Character.isWhitespace(c)) {
+                pos++;
+            }
+            return pos;
+        }
+
+        private static URI parseBase(String baseUrl) {
+            try {
+                return baseUrl != null ? URI.create(baseUrl) : null;
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * URL中允许出现的字符：引号、空白、尖括号、括号、逗号和分号视为边界
+     */
+    private static boolean isUrlChar(int c) {
+        if (c < 0 || Character.isWhitespace(c)) {
+            return false;
+        }
+        switch (c) {
+            case '"': case '\'': case '`': case '<': case '>': case '(': case ')':
+            case '{': case '}': case '[': case ']': case ',': case ';': case '|': case '^':
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    private static int lower(int c) {
+        if (c >= 'A' && c <= 'Z') {
+            return c + 32;
+        }
+        return c < ALPHABET ? c : 0;
+    }
+
+    /**
+     * 滑动窗口 - 按绝对位置访问字符，Reader 按需读入，已扫描过的部分可以丢弃
+     */
+    private static final class Window {
+        private final CharSequence text;
+        private final Reader reader;
+        private char[] buffer;
+        private long offset; // buffer[0] 的绝对位置
+        private int length;
+        private boolean eof;
+
+        Window(CharSequence text) {
+            this.text = text;
+            this.reader = null;
+        }
+
+        Window(Reader reader) {
+            this.text = null;
+            this.reader = reader;
+            this.buffer = new char[READ_CHUNK * 2];
+        }
+
+        /**
+         * @return 指定位置的字符，超出末尾时返回 -1
+         */
+        int charAt(long pos) throws IOException {
+            if (text != null) {
+                return pos < text.length() ? text.charAt((int) pos) : -1;
+            }
+            while (pos >= offset + length) {
+                if (!fill()) {
+                    return -1;
+                }
+            }
+            return buffer[(int) (pos - offset)];
+        }
+
+        long firstAvailable() {
+            return text != null ? 0 : offset;
+        }
+
+        String substring(long start, long end) throws IOException {
+            if (text != null) {
+                return text.subSequence((int) start, (int) Math.min(end, text.length())).toString();
+            }
+            if (end > start) {
+                charAt(end - 1);
+            }
+            int from = (int) (start - offset);
+            int to = (int) Math.min(end - offset, length);
+            return new String(buffer, from, Math.max(0, to - from));
+        }
+
+        /**
+         * 丢弃 pos 之前的文本
+         */
+        void discardBefore(long pos) {
+            // 累积足够多可丢弃的文本后再整体前移，避免频繁复制
+            if (text != null || pos - offset < READ_CHUNK) {
+                return;
+            }
+            int drop = (int) Math.min(pos - offset, length);
+            System.arraycopy(buffer, drop, buffer, 0, length - drop);
+            offset += drop;
+            length -= drop;
+        }
+
+        private boolean fill() throws IOException {
+            if (eof) {
+                return false;
+            }
+            if (length + READ_CHUNK > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + READ_CHUNK));
+            }
+            int read = reader.read(buffer, length, READ_CHUNK);
+            if (read < 0) {
+                eof = true;
+                return false;
+            }
+            length += read;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package com.media;
+
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.devtools.Command;
+import org.openqa.selenium.devtools.DevTools;
+import org.openqa.selenium.devtools.Event;
+import org.openqa.selenium.devtools.HasDevTools;
+import org.openqa.selenium.json.Json;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * 网络抓包 - 通过Chrome DevTools协议的 Network 域监听页面发出的所有请求，
+ * 响应的MIME类型、资源类型或URL是媒体时立即记录，并保存回放下载所需的请求头（Cookie、Referer等）
+ * 能发现 fetch/XHR 加载的媒体以及MSE播放器背后的播放列表，这些在页面源代码和DOM中都看不到
+ * 直接使用协议方法名收发消息，不依赖Selenium内置的某个CDP版本的类，浏览器升级后仍然可用
+ */
+public final class NetworkCapture implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(NetworkCapture.class);
+
+    // 回放时不复制的请求头：由HTTP客户端自行管理的、条件请求和分段相关的，以及HTTP/2伪头（以冒号开头）
+    private static final Set<String> SKIPPED_HEADERS = new HashSet<>(Arrays.asList(
+            "host", "connection", "keep-alive", "content-length", "transfer-encoding", "te", "upgrade",
+            "accept-encoding", "range", "if-range", "if-none-match", "if-modified-since",
+            "upgrade-insecure-requests"));
+
+    private static final Event<Map<String, Object>> REQUEST_WILL_BE_SENT = event("Network.requestWillBeSent");
+    private static final Event<Map<String, Object>> REQUEST_EXTRA_INFO = event("Network.requestWillBeSentExtraInfo");
+    private static final Event<Map<String, Object>> RESPONSE_RECEIVED = event("Network.responseReceived");
+    private static final Event<Map<String, Object>> LOADING_FINISHED = event("Network.loadingFinished");
+    private static final Event<Map<String, Object>> LOADING_FAILED = event("Network.loadingFailed");
+
+    private final DevTools devTools;
+    // requestId -> 请求头；requestWillBeSent 不含 Cookie，完整的请求头在 ExtraInfo 事件中，两者到达顺序不固定
+    private final Map<String, Map<String, String>> requestHeaders = new ConcurrentHashMap<>();
+    private final Map<String, CapturedMedia> captured = new LinkedHashMap<>(); // URL -> 媒体，按请求顺序
+    private volatile Consumer<CapturedMedia> listener;
+
+    /**
+     * 抓取到的媒体请求
+     */
+    public static final class CapturedMedia {
+        public final String url;
+        public final String mimeType;
+        public final int status;
+        public final String resourceType; // Chrome的资源类型：Media、XHR、Fetch等
+        public final Map<String, String> headers; // 回放下载需要的请求头
+        final String requestId;
+
+        CapturedMedia(String url, String mimeType, int status, String resourceType,
+                      Map<String, String> headers, String requestId) {
+            this.url = url;
+            this.mimeType = mimeType;
+            this.status = status;
+            this.resourceType = resourceType;
+            this.headers = Collections.unmodifiableMap(headers);
+            this.requestId = requestId;
+        }
+
+        /**
+         * 媒体类型：优先使用响应的 Content-Type，其次是URL扩展名，都无法识别时返回null
+         */
+        public MediaTypes.Type type() {
+            MediaTypes.Type type = MediaTypes.fromContentType(mimeType);
+            return type != null ? type : MediaTypes.fromExtension(url);
+        }
+
+        @Override
+        public String toString() {
+            return url + " (" + mimeType + ", " + resourceType + ")";
+        }
+    }
+
+    private NetworkCapture(DevTools devTools) {
+        this.devTools = devTools;
+    }
+
+    /**
+     * 在浏览器上开始抓包，应在打开页面之前调用；浏览器不支持DevTools时返回null
+     */
+    public static NetworkCapture start(WebDriver driver) {
+        if (!(driver instanceof HasDevTools)) {
+            return null;
+        }
+        try {
+            DevTools devTools = ((HasDevTools) driver).getDevTools();
+            devTools.createSessionIfThereIsNotOne();
+            NetworkCapture capture = new NetworkCapture(devTools);
+            devTools.addListener(REQUEST_WILL_BE_SENT, capture::onRequest);
+            devTools.addListener(REQUEST_EXTRA_INFO, capture::onRequestExtraInfo);
+            devTools.addListener(RESPONSE_RECEIVED, capture::onResponse);
+            devTools.addListener(LOADING_FINISHED, capture::onLoadingDone);
+            devTools.addListener(LOADING_FAILED, capture::onLoadingDone);
+            devTools.send(new Command<Void>("Network.enable", Collections.emptyMap()));
+            return capture;
+        } catch (Exception e) {
+            logger.warn("无法启用DevTools网络抓包: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 每抓取到一个新的媒体URL立即回调（在DevTools事件线程上，回调中不要执行耗时操作）
+     */
+    public void onMedia(Consumer<CapturedMedia> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 已抓取的媒体（按请求顺序，同一URL只保留一次）
+     * 已抓到的播放列表中列出的子播放列表和分片不单独返回，它们会随播放列表一起下载
+     */
+    public List<CapturedMedia> media() {
+        List<CapturedMedia> all;
+        synchronized (captured) {
+            all = new ArrayList<>(captured.values());
+        }
+
+        Set<String> children = new HashSet<>();
+        boolean hasPlaylist = false;
+        for (CapturedMedia media : all) {
+            if (media.type() == MediaTypes.Type.M3U8) {
+                hasPlaylist = true;
+                children.addAll(playlistEntries(media));
+            }
+        }
+
+        List<CapturedMedia> result = new ArrayList<>();
+        for (CapturedMedia media : all) {
+            if (children.contains(media.url)) {
+                continue;
+            }
+            if (hasPlaylist && media.type() == MediaTypes.Type.MPEG_TS) {
+                continue; // 播放列表内容已被浏览器丢弃时，按类型排除分片
+            }
+            result.add(media);
+        }
+        return result;
+    }
+
+    /**
+     * 停止抓包
+     */
+    @Override
+    public void close() {
+        try {
+            devTools.send(new Command<Void>("Network.disable", Collections.emptyMap()));
+        } catch (Exception e) {
+            logger.debug("关闭网络抓包失败: {}", e.getMessage());
+        }
+        devTools.clearListeners();
+    }
+
+    private void onRequest(Map<String, Object> params) {
+        Map<String, Object> request = map(params.get("request"));
+        mergeHeaders(string(params.get("requestId")), map(request.get("headers")));
+    }
+
+    private void onRequestExtraInfo(Map<String, Object> params) {
+        mergeHeaders(string(params.get("requestId")), map(params.get("headers")));
+    }
+
+    private void onResponse(Map<String, Object> params) {
+        String requestId = string(params.get("requestId"));
+        String resourceType = string(params.get("type"));
+        Map<String, Object> response = map(params.get("response"));
+        String url = string(response.get("url"));
+        String mimeType = string(response.get("mimeType"));
+        Object status = response.get("status");
+        int code = status instanceof Number ? ((Number) status).intValue() : 0;
+
+        if (!isMedia(url, mimeType, code, resourceType)) {
+            return;
+        }
+        // 引用同一个请求头表：响应之后才到达的 ExtraInfo（带Cookie）仍会补充进来
+        Map<String, String> headers = requestId != null
+                ? requestHeaders.computeIfAbsent(requestId, id -> new ConcurrentHashMap<>())
+                : new ConcurrentHashMap<>();
+        CapturedMedia media = new CapturedMedia(url, mimeType, code, resourceType, headers, requestId);
+        synchronized (captured) {
+            if (captured.putIfAbsent(url, media) != null) {
+                return; // 同一URL的分段请求
+            }
+        }
+        logger.debug("抓取到媒体请求: {}", media);
+        Consumer<CapturedMedia> current = listener;
+        if (current != null) {
+            try {
+                current.accept(media);
+            } catch (RuntimeException e) {
+                logger.warn("处理抓取到的媒体失败: {}", url, e);
+            }
+        }
+    }
+
+    private void onLoadingDone(Map<String, Object> params) {
+        requestHeaders.remove(string(params.get("requestId")));
+    }
+
+    private void mergeHeaders(String requestId, Map<String, Object> headers) {
+        if (requestId == null || headers.isEmpty()) {
+            return;
+        }
+        Map<String, String> merged = requestHeaders.computeIfAbsent(requestId, id -> new ConcurrentHashMap<>());
+        headers.forEach((name, value) -> {
+            String lower = name.toLowerCase(Locale.ROOT);
+            if (value != null && !lower.startsWith(":") && !SKIPPED_HEADERS.contains(lower)) {
+                merged.put(name, value.toString());
+            }
+        });
+    }
+
+    /**
+     * 判断响应是否是媒体：先看MIME类型，其次看URL扩展名，最后看浏览器给出的资源类型
+     */
+    private static boolean isMedia(String url, String mimeType, int status, String resourceType) {
+        if (url == null || !(url.startsWith("http://") || url.startsWith("https://")) || status >= 400) {
+            return false; // data:、blob: 地址无法在浏览器外下载
+        }
+        MediaTypes.Type type = MediaTypes.fromContentType(mimeType);
+        if (type != null) {
+            return type.isMedia();
+        }
+        return MediaTypes.isMediaUrl(url) || "Media".equals(resourceType);
+    }
+
+    /**
+     * 取回播放列表的内容，返回其中列出的子播放列表和分片的绝对地址；内容已不可用时返回空集合
+     */
+    private Set<String> playlistEntries(CapturedMedia playlist) {
+        Set<String> entries = new HashSet<>();
+        try {
+            Map<String, Object> result = devTools.send(new Command<>("Network.getResponseBody",
+                    Collections.singletonMap("requestId", playlist.requestId),
+                    input -> input.<Map<String, Object>>read(Json.MAP_TYPE)));
+            String body = string(result.get("body"));
+            if (body == null) {
+                return entries;
+            }
+            if (Boolean.TRUE.equals(result.get("base64Encoded"))) {
+                body = new String(Base64.getDecoder().decode(body), StandardCharsets.UTF_8);
+            }
+            URI base = URI.create(playlist.url);
+            for (String line : body.split("\r?\n")) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    entries.add(base.resolve(line).toString());
+                }
+            }
+        } catch (Exception e) {
+            logger.debug("无法读取播放列表内容: {} ({})", playlist.url, e.getMessage());
+        }
+        return entries;
+    }
+
+    private static Event<Map<String, Object>> event(String method) {
+        return new Event<>(method, input -> input.<Map<String, Object>>read(Json.MAP_TYPE));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> map(Object value) {
+        return value instanceof Map ? (Map<String, Object>) value : Collections.emptyMap();
+    }
+
+    private static String string(Object value) {
+        return value != null ? value.toString() : null;
+    }
+}
@@ -0,0 +1,160 @@
+package com.media;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * 批量页面任务 - 读取页面列表，并把每个页面的处理结果写成JSONL汇总
+ * 输入每行一个URL，或每行一个JSON对象 {"url": "...", "outputDir": "..."}（outputDir可省略），空行和 # 开头的注释跳过
+ */
+public final class PageBatch {
+    private static final Logger logger = LoggerFactory.getLogger(PageBatch.class);
+    private static final Gson GSON = new Gson();
+
+    private PageBatch() {
+    }
+
+    /**
+     * 一个待处理的页面
+     */
+    public static final class Entry {
+        public final String url;
+        public final Path outputDir;
+
+        public Entry(String url, Path outputDir) {
+            this.url = url;
+            this.outputDir = outputDir;
+        }
+    }
+
+    /**
+     * 一个页面的处理结果，对应汇总文件中的一行
+     */
+    public static final class Result {
+        public static final String OK = "ok"; // 找到的媒体全部下载成功
+        public static final String PARTIAL = "partial"; // 部分媒体下载失败
+        public static final String EMPTY = "empty"; // 没有找到媒体
+        public static final String FAILED = "failed"; // 页面处理失败
+        public static final String STATIC = "static"; // 静态解析（没有使用浏览器）
+        public static final String BROWSER = "browser"; // 浏览器渲染
+
+        public String url;
+        public String outputDir;
+        public String status;
+        public String renderer; // static 或 browser
+        public String escalation; // 自动模式下改用浏览器的原因
+        public int mediaFound;
+        public int downloaded;
+        public int failed;
+        public long renderMillis; // 页面解析（静态获取或浏览器渲染）到提取完成的耗时
+        public long totalMillis; // 包括所有下载的耗时
+        public String error;
+        public List<String> files = new ArrayList<>();
+        public List<String> errors = new ArrayList<>();
+    }
+
+    /**
+     * 逐行读取页面列表（按需读取，适用于标准输入和大文件）；格式错误的行记录警告后跳过
+     */
+    public static Iterator<Entry> read(BufferedReader reader, Path defaultOutputDir) {
+        return new Iterator<Entry>() {
+            private Entry next;
+            private int lineNumber;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null) {
+                    String line;
+                    try {
+                        line = reader.readLine();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    if (line == null) {
+                        return false;
+                    }
+                    lineNumber++;
+                    next = parse(line.trim(), defaultOutputDir, lineNumber);
+                }
+                return true;
+            }
+
+            @Override
+            public Entry next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Entry entry = next;
+                next = null;
+                return entry;
+            }
+        };
+    }
+
+    private static Entry parse(String line, Path defaultOutputDir, int lineNumber) {
+        if (line.isEmpty() || line.startsWith("#")) {
+            return null;
+        }
+        if (!line.startsWith("{")) {
+            return new Entry(line, defaultOutputDir);
+        }
+        try {
+            JsonObject json = JsonParser.parseString(line).getAsJsonObject();
+            if (!json.has("url")) {
+                logger.warn("第 {} 行缺少url，跳过", lineNumber);
+                return null;
+            }
+            Path outputDir = json.has("outputDir") ? Paths.get(json.get("outputDir").getAsString()) : defaultOutputDir;
+            return new Entry(json.get("url").getAsString(), outputDir);
+        } catch (JsonParseException | IllegalStateException | UnsupportedOperationException e) {
+            logger.warn("第 {} 行不是有效的JSON，跳过: {}", lineNumber, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 汇总文件：每个页面完成后追加一行JSON，多线程安全
+     */
+    public static final class SummaryWriter implements Closeable {
+        private final Writer writer;
+
+        public SummaryWriter(Path file) throws IOException {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+
+        public synchronized void write(Result result) throws IOException {
+            writer.write(GSON.toJson(result));
+            writer.write('\n');
+            writer.flush();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package com.media;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 文档页面索引 - 记录每个已保存页面的 ETag、Last-Modified、正文摘要、保存的文件和页面上的链接，用于增量更新：
+ * 再次爬取时发送条件请求，服务器返回304或正文摘要不变的页面不再提取和写入，内容变化的页面原地覆盖；
+ * 304 响应没有页面内容，从索引中取出上次的链接，爬虫照样能继续跟随
+ * 本次没有再出现的页面在报告中列为已删除，记录和文件默认保留（页面可能只是因抓取失败或上限没有到达）
+ *
+ * 目录结构:
+ *   <输出目录>/.crawl/pages.jsonl   - 追加写入的索引，同一URL以最后一行为准，结束时压缩
+ */
+public final class PageIndex implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(PageIndex.class);
+    private static final Gson GSON = new Gson();
+    private static final String INDEX_DIR = ".crawl";
+
+    private final Path outputDir;
+    private final Path indexFile;
+    private final Map<String, Entry> entries = new LinkedHashMap<>(); // URL -> 记录
+    private final Map<String, String> owners = new HashMap<>(); // 文件 -> URL
+    private final Set<String> seen = new HashSet<>(); // 本次出现过（包括抓取失败）的页面
+    private final List<String> added = new ArrayList<>();
+    private final List<String> modified = new ArrayList<>();
+    private final List<String> removed = new ArrayList<>();
+    private int unchanged;
+    private int failures; // 本次抓取或保存失败的页面数
+    private Writer writer;
+
+    /**
+     * 索引记录
+     */
+    public static class Entry {
+        String url;
+        String etag;
+        String lastModified;
+        String hash; // 提取出的正文的SHA-256
+        String file; // 相对输出目录的路径
+        List<String> links; // 页面上的文档链接，304时用于继续爬取
+    }
+
+    private PageIndex(Path outputDir) throws IOException {
+        this.outputDir = outputDir;
+        Path dir = outputDir.resolve(INDEX_DIR);
+        this.indexFile = dir.resolve("pages.jsonl");
+        Files.createDirectories(dir);
+        load();
+    }
+
+    /**
+     * 打开输出目录下的页面索引
+     */
+    public static PageIndex open(Path outputDir) throws IOException {
+        return new PageIndex(outputDir);
+    }
+
+    /**
+     * 可用于条件请求的上次记录：有链接且文件仍在时返回，否则返回null（需要完整抓取）
+     */
+    public synchronized Entry validators(String url) {
+        Entry entry = entries.get(url);
+        return entry != null && entry.links != null && (entry.etag != null || entry.lastModified != null)
+                && entry.file != null && Files.exists(outputDir.resolve(entry.file)) ? entry : null;
+    }
+
+    /**
+     * 页面未变化（304，或正文摘要相同）；有新的验证器时更新
+     */
+    public synchronized void unchanged(String url, String etag, String lastModified, Collection<String> links) {
+        seen.add(url);
+        unchanged++;
+        Entry entry = entries.get(url);
+        if (entry == null || (etag == null && lastModified == null && links == null)) {
+            return;
+        }
+        entry.etag = etag;
+        entry.lastModified = lastModified;
+        if (links != null) {
+            entry.links = new ArrayList<>(links);
+        }
+        append(entry);
+    }
+
+    /**
+     * 页面抓取失败，保留上次的记录和文件
+     */
+    public synchronized void failed(String url) {
+        seen.add(url);
+        failures++;
+    }
+
+    /**
+     * 本次是否有页面抓取或保存失败
+     */
+    public synchronized boolean hasFailures() {
+        return failures > 0;
+    }
+
+    /**
+     * 页面在之前中断的爬取中已处理过
+     */
+    public synchronized void seen(String url) {
+        seen.add(url);
+    }
+
+    /**
+     * 页面内容的保存位置：沿用上次的文件；新页面使用 preferred，已被其他页面占用时加 _1、_2 等后缀
+     */
+    public synchronized Path fileFor(String url, Path preferred) {
+        Entry entry = entries.get(url);
+        if (entry != null && entry.file != null) {
+            return outputDir.resolve(entry.file);
+        }
+        Path file = preferred;
+        String name = preferred.getFileName().toString();
+        String base = name.endsWith(".txt") ? name.substring(0, name.length() - 4) : name;
+        for (int counter = 1; !url.equals(owners.getOrDefault(relative(file), url)); counter++) {
+            file = preferred.resolveSibling(base + "_" + counter + ".txt");
+        }
+        return file;
+    }
+
+    /**
+     * 正文摘要与上次相同且文件仍在时返回true
+     */
+    public synchronized boolean isUnchanged(String url, String hash) {
+        Entry entry = entries.get(url);
+        return entry != null && hash.equals(entry.hash) && entry.file != null
+                && Files.exists(outputDir.resolve(entry.file));
+    }
+
+    /**
+     * 页面内容已写入文件
+     */
+    public synchronized void saved(String url, String etag, String lastModified, String hash, Path file,
+                                   Collection<String> links) {
+        seen.add(url);
+        Entry previous = entries.get(url);
+        (previous == null ? added : modified).add(url);
+
+        Entry entry = new Entry();
+        entry.url = url;
+        entry.etag = etag;
+        entry.lastModified = lastModified;
+        entry.hash = hash;
+        entry.file = relative(file);
+        entry.links = links != null ? new ArrayList<>(links) : null;
+        index(entry);
+        append(entry);
+    }
+
+    /**
+     * 爬取完成：本次没有出现的页面记为已删除，然后压缩索引
+     * @param deleteRemoved 是否同时删除这些页面的记录和文件，只应在完整爬取（没有失败、没有达到上限）时使用
+     */
+    public synchronized void finish(boolean deleteRemoved) {
+        for (Entry entry : new ArrayList<>(entries.values())) {
+            if (seen.contains(entry.url)) {
+                continue;
+            }
+            removed.add(entry.url);
+            if (!deleteRemoved) {
+                continue;
+            }
+            entries.remove(entry.url);
+            if (entry.file != null) {
+                owners.remove(entry.file);
+                try {
+                    Files.deleteIfExists(outputDir.resolve(entry.file));
+                } catch (IOException e) {
+                    logger.warn("删除文件失败: {} ({})", entry.file, e.getMessage());
+                }
+            }
+        }
+        try {
+            compact();
+        } catch (IOException e) {
+            logger.warn("压缩页面索引失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 变更报告：新增、修改、删除的页面
+     */
+    public synchronized String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("增量更新: 新增 ").append(added.size()).append(" 个，修改 ").append(modified.size())
+                .append(" 个，删除 ").append(removed.size()).append(" 个，未变化 ").append(unchanged).append(" 个");
+        added.forEach(url -> sb.append("\n  + ").append(url));
+        modified.forEach(url -> sb.append("\n  ~ ").append(url));
+        removed.forEach(url -> sb.append("\n  - ").append(url));
+        return sb.toString();
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            if (writer != null) {
+                writer.close();
+                writer = null;
+            }
+        } catch (IOException e) {
+            logger.warn("关闭页面索引失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 正文的SHA-256
+     */
+    public static String hash(String content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return ContentHasher.toHex(digest.digest(content.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("JVM不支持SHA-256", e);
+        }
+    }
+
+    private void index(Entry entry) {
+        Entry previous = entries.put(entry.url, entry);
+        if (previous != null && previous.file != null && !previous.file.equals(entry.file)) {
+            owners.remove(previous.file);
+        }
+        if (entry.file != null) {
+            owners.put(entry.file, entry.url);
+        }
+    }
+
+    private String relative(Path file) {
+        return outputDir.relativize(file).toString().replace('\\', '/');
+    }
+
+    /**
+     * 追加一条记录；写入失败只记录警告，下次运行时该页面按新页面处理
+     */
+    private void append(Entry entry) {
+        try {
+            if (writer == null) {
+                writer = Files.newBufferedWriter(indexFile, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            writer.write(GSON.toJson(entry));
+            writer.write('\n');
+            writer.flush();
+        } catch (IOException e) {
+            logger.warn("写入页面索引失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 只保留每个URL的最新记录，原子地替换索引文件
+     */
+    private void compact() throws IOException {
+        close();
+        StringBuilder sb = new StringBuilder();
+        for (Entry entry : entries.values()) {
+            sb.append(GSON.toJson(entry)).append('\n');
+        }
+        Path tmp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        Files.write(tmp, sb.toString().getBytes(StandardCharsets.UTF_8));
+        try {
+            Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void load() throws IOException {
+        if (!Files.exists(indexFile)) {
+            return;
+        }
+        for (String line : Files.readAllLines(indexFile, StandardCharsets.UTF_8)) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            try {
+                Entry entry = GSON.fromJson(line, Entry.class);
+                if (entry != null && entry.url != null) {
+                    index(entry);
+                }
+            } catch (JsonParseException e) {
+                // 进程被中断时最后一行可能不完整
+                logger.warn("跳过损坏的索引行: {}", line);
+            }
+        }
+        logger.info("页面索引已加载: {} 个页面", entries.size());
+    }
+}
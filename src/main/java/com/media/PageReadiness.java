@@ -0,0 +1,178 @@
+package com.media;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.chromium.ChromiumDriver;
+import org.openqa.selenium.support.ui.WebDriverWait;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 页面就绪检测 - 代替固定等待：文档加载完成、网络空闲（一段时间内没有进行中的请求）、
+ * DOM不再变化，并且（如果配置了）站点特定的选择器已出现，才认为页面就绪；整体受最长等待时间约束
+ * 网络和DOM的活动由页面创建时注入的脚本记录，需要在打开页面之前调用 install
+ */
+public final class PageReadiness implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(PageReadiness.class);
+
+    // 可通过 -Dmedia.page.idleMillis 等调整
+    private static final long IDLE_MILLIS = Long.getLong("media.page.idleMillis", 500); // 网络和DOM保持安静的时间
+    private static final long POLL_MILLIS = 100; // 检查间隔
+    // 站点特定的就绪选择器，格式: 主机=CSS选择器;主机=CSS选择器，主机匹配自身及子域名
+    private static final Map<String, String> READY_SELECTORS = parseSelectors(System.getProperty("media.page.readySelectors", ""));
+
+    // 在每个新文档创建时执行：统计进行中的 fetch/XHR 请求、最后一次网络活动和DOM变化的时间
+    private static final String PROBE_SCRIPT = String.join("\n",
+            "(function () {",
+            "  if (window.__mediaReady) return;",
+            "  var s = window.__mediaReady = { inflight: 0, lastNetwork: 0, lastMutation: 0 };",
+            "  function start() { s.inflight++; s.lastNetwork = performance.now(); }",
+            "  function end() { s.inflight = Math.max(0, s.inflight - 1); s.lastNetwork = performance.now(); }",
+            "  var fetch = window.fetch;",
+            "  if (fetch) {",
+            "    window.fetch = function () {",
+            "      start();",
+            "      return fetch.apply(this, arguments).then(function (r) { end(); return r; },",
+            "                                               function (e) { end(); throw e; });",
+            "    };",
+            "  }",
+            "  var send = XMLHttpRequest.prototype.send;",
+            "  XMLHttpRequest.prototype.send = function () {",
+            "    start();",
+            "    this.addEventListener('loadend', end);",
+            "    return send.apply(this, arguments);",
+            "  };",
+            "  new MutationObserver(function () { s.lastMutation = performance.now(); })",
+            "      .observe(document, { childList: true, subtree: true, attributes: true, characterData: true });",
+            "})();");
+
+    // 每次检查时执行：没有注入脚本的页面（非Chromium浏览器）只根据 readyState 和资源加载时间判断
+    private static final String CHECK_SCRIPT = String.join("\n",
+            "var s = window.__mediaReady, now = performance.now(), lastResource = 0;",
+            "var entries = performance.getEntriesByType('resource');",
+            "for (var i = 0; i < entries.length; i++) lastResource = Math.max(lastResource, entries[i].responseEnd);",
+            "return {",
+            "  readyState: document.readyState,",
+            "  inflight: s ? s.inflight : 0,",
+            "  networkIdle: now - Math.max(s ? s.lastNetwork : 0, lastResource),",
+            "  domIdle: s ? now - s.lastMutation : now",
+            "};");
+
+    private final WebDriver driver;
+    private final String scriptId;
+
+    private PageReadiness(WebDriver driver, String scriptId) {
+        this.driver = driver;
+        this.scriptId = scriptId;
+    }
+
+    /**
+     * 在浏览器上注入检测脚本，应在打开页面之前调用；非Chromium浏览器只能检测 readyState
+     */
+    public static PageReadiness install(WebDriver driver) {
+        String scriptId = null;
+        if (driver instanceof ChromiumDriver) {
+            try {
+                Map<String, Object> result = ((ChromiumDriver) driver).executeCdpCommand(
+                        "Page.addScriptToEvaluateOnNewDocument", Collections.singletonMap("source", PROBE_SCRIPT));
+                Object identifier = result.get("identifier");
+                scriptId = identifier != null ? identifier.toString() : null;
+            } catch (Exception e) {
+                logger.warn("无法注入页面就绪检测脚本: {}", e.getMessage());
+            }
+        }
+        return new PageReadiness(driver, scriptId);
+    }
+
+    /**
+     * 等待当前页面就绪
+     * @param maxWait 最长等待时间，超时后不抛异常
+     * @return 是否在超时之前就绪
+     */
+    public boolean await(Duration maxWait) {
+        String selector = selectorFor(driver.getCurrentUrl());
+        WebDriverWait wait = new WebDriverWait(driver, maxWait, Duration.ofMillis(POLL_MILLIS));
+        try {
+            wait.until(d -> isReady(selector));
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 移除注入的脚本，之后在同一浏览器中打开的页面不再执行
+     */
+    @Override
+    public void close() {
+        if (scriptId == null) {
+            return;
+        }
+        try {
+            ((ChromiumDriver) driver).executeCdpCommand("Page.removeScriptToEvaluateOnNewDocument",
+                    Collections.singletonMap("identifier", scriptId));
+        } catch (Exception e) {
+            logger.debug("移除页面就绪检测脚本失败: {}", e.getMessage());
+        }
+    }
+
+    private boolean isReady(String selector) {
+        Object result = ((JavascriptExecutor) driver).executeScript(CHECK_SCRIPT);
+        if (!(result instanceof Map)) {
+            return false;
+        }
+        Map<?, ?> state = (Map<?, ?>) result;
+        boolean ready = "complete".equals(state.get("readyState"))
+                && number(state.get("inflight")) == 0
+                && number(state.get("networkIdle")) >= IDLE_MILLIS
+                && number(state.get("domIdle")) >= IDLE_MILLIS;
+        return ready && (selector == null || !driver.findElements(By.cssSelector(selector)).isEmpty());
+    }
+
+    /**
+     * 查找页面所在站点配置的就绪选择器，没有时返回null
+     */
+    static String selectorFor(String url) {
+        if (READY_SELECTORS.isEmpty() || url == null) {
+            return null;
+        }
+        try {
+            String host = URI.create(url).getHost();
+            while (host != null) {
+                String selector = READY_SELECTORS.get(host.toLowerCase(Locale.ROOT));
+                if (selector != null) {
+                    return selector;
+                }
+                int dot = host.indexOf('.');
+                host = dot >= 0 ? host.substring(dot + 1) : null;
+            }
+        } catch (IllegalArgumentException e) {
+            // 无法解析的URL
+        }
+        return null;
+    }
+
+    private static Map<String, String> parseSelectors(String config) {
+        Map<String, String> selectors = new HashMap<>();
+        for (String entry : config.split(";")) {
+            int eq = entry.indexOf('=');
+            if (eq > 0 && eq < entry.length() - 1) {
+                selectors.put(entry.substring(0, eq).trim().toLowerCase(Locale.ROOT), entry.substring(eq + 1).trim());
+            }
+        }
+        return selectors;
+    }
+
+    private static double number(Object value) {
+        return value instanceof Number ? ((Number) value).doubleValue() : 0;
+    }
+}
@@ -0,0 +1,144 @@
+package com.media;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * 流式网页读取 - 边接收边解码、边扫描媒体链接，找到的URL立即交给下游，不必等整页下载完（仅依赖标准库）
+ * 单个页面的读取量有上限，超过时中止，防止恶意或异常的超大页面耗尽内存
+ */
+public final class PageStream {
+    // 可通过 -Dmedia.html.maxPageBytes 调整
+    public static final long MAX_PAGE_BYTES = Long.getLong("media.html.maxPageBytes", 16L * 1024 * 1024); // 单个页面最多读取的字节数
+    private static final int READ_CHUNK = 16 * 1024;
+
+    /**
+     * 页面超过大小上限
+     */
+    public static class PageTooLargeException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public PageTooLargeException(String message) {
+            super(message);
+        }
+    }
+
+    private PageStream() {
+    }
+
+    /**
+     * 把响应体包装为字符流：按 Content-Type 中的 charset 解码（缺省UTF-8），读取超过上限时抛出 PageTooLargeException
+     * @param contentLength 响应声明的长度，未知时为 -1；声明的长度已超过上限时直接拒绝
+     */
+    public static Reader open(InputStream body, String contentType, long contentLength) throws IOException {
+        return open(body, contentType, contentLength, MAX_PAGE_BYTES);
+    }
+
+    public static Reader open(InputStream body, String contentType, long contentLength, long maxBytes) throws IOException {
+        if (contentLength > maxBytes) {
+            body.close();
+            throw new PageTooLargeException("页面过大: " + contentLength + " 字节，上限 " + maxBytes + " 字节");
+        }
+        return new InputStreamReader(new LimitedInputStream(body, maxBytes), charsetOf(contentType));
+    }
+
+    /**
+     * 边读边扫描媒体URL，每个URL第一次出现时立即回调（在调用线程上）
+     * @return 去重后的全部URL（保持出现顺序）
+     */
+    public static Set<String> scan(Reader reader, String baseUrl, Consumer<String> onUrl) throws IOException {
+        Set<String> urls = new LinkedHashSet<>();
+        MediaUrlScanner.scan(reader, baseUrl, url -> {
+            if (urls.add(url)) {
+                onUrl.accept(url);
+            }
+        });
+        return urls;
+    }
+
+    /**
+     * 读出全部文本（同样受大小上限约束），用于需要完整DOM的场景
+     */
+    public static String readFully(Reader reader) throws IOException {
+        StringBuilder text = new StringBuilder();
+        char[] buffer = new char[READ_CHUNK];
+        for (int read; (read = reader.read(buffer)) >= 0; ) {
+            text.append(buffer, 0, read);
+        }
+        return text.toString();
+    }
+
+    /**
+     * 从 Content-Type 中取出字符集，缺失或不支持时使用UTF-8
+     */
+    static Charset charsetOf(String contentType) {
+        if (contentType != null) {
+            int index = contentType.toLowerCase(Locale.ROOT).indexOf("charset=");
+            if (index >= 0) {
+                String name = contentType.substring(index + 8).trim();
+                int end = name.indexOf(';');
+                name = (end >= 0 ? name.substring(0, end) : name).replace("\"", "").replace("'", "").trim();
+                try {
+                    return Charset.forName(name);
+                } catch (IllegalArgumentException e) {
+                    // 不认识的字符集
+                }
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    /**
+     * 限制读取总量的输入流
+     */
+    private static final class LimitedInputStream extends FilterInputStream {
+        private final long maxBytes;
+        private long count;
+
+        LimitedInputStream(InputStream in, long maxBytes) {
+            super(in);
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, (int) Math.min(len, maxBytes - count + 1));
+            if (read > 0) {
+                count(read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        private void count(long bytes) throws PageTooLargeException {
+            count += bytes;
+            if (count > maxBytes) {
+                throw new PageTooLargeException("页面超过大小上限 " + maxBytes + " 字节，已中止读取");
+            }
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.media;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * robots.txt - 站点声明的 Sitemap 地址、抓取规则（Allow/Disallow，支持 * 和 $ 通配）和 Crawl-delay
+ * 规则取与本程序 User-Agent 匹配的分组，没有时取 * 分组；robots.txt 不存在或无法获取时全部允许
+ */
+public final class RobotsTxt {
+    private static final Logger logger = LoggerFactory.getLogger(RobotsTxt.class);
+    private static final long MAX_BYTES = 512 * 1024; // robots.txt 最多读取的字节数
+
+    private static final RobotsTxt ALLOW_ALL = new RobotsTxt(Collections.emptyList(), Collections.emptyList(), -1);
+
+    private final List<String> sitemaps;
+    private final List<Rule> rules;
+    private final long crawlDelayMillis;
+
+    /**
+     * 一条 Allow/Disallow 规则
+     */
+    private static final class Rule {
+        final String pattern;
+        final boolean allow;
+
+        Rule(String pattern, boolean allow) {
+            this.pattern = pattern;
+            this.allow = allow;
+        }
+    }
+
+    private RobotsTxt(List<String> sitemaps, List<Rule> rules, long crawlDelayMillis) {
+        this.sitemaps = sitemaps;
+        this.rules = rules;
+        this.crawlDelayMillis = crawlDelayMillis;
+    }
+
+    /**
+     * 获取站点的 robots.txt
+     * @param siteUrl 站点中任意一个URL
+     */
+    public static RobotsTxt fetch(OkHttpClient client, String siteUrl, String userAgent) {
+        String robotsUrl;
+        try {
+            URI uri = URI.create(siteUrl);
+            robotsUrl = uri.getScheme() + "://" + uri.getRawAuthority() + "/robots.txt";
+        } catch (IllegalArgumentException e) {
+            return ALLOW_ALL;
+        }
+        Request request = new Request.Builder()
+                .url(robotsUrl)
+                .header("User-Agent", userAgent)
+                .build();
+        try (Response response = client.newCall(request).execute()) {
+            ResponseBody body = response.body();
+            if (!response.isSuccessful() || body == null) {
+                logger.info("没有 robots.txt: {} ({})", robotsUrl, response.code());
+                return ALLOW_ALL;
+            }
+            try (Reader reader = PageStream.open(body.byteStream(), response.header("Content-Type"),
+                    body.contentLength(), MAX_BYTES)) {
+                return parse(PageStream.readFully(reader), userAgent);
+            }
+        } catch (IOException e) {
+            logger.warn("获取 robots.txt 失败: {} ({})", robotsUrl, e.getMessage());
+            return ALLOW_ALL;
+        }
+    }
+
+    /**
+     * 解析 robots.txt 内容
+     */
+    static RobotsTxt parse(String text, String userAgent) {
+        String agent = userAgent.toLowerCase(Locale.ROOT);
+        List<String> sitemaps = new ArrayList<>();
+        List<Rule> wildcardRules = new ArrayList<>();
+        List<Rule> agentRules = new ArrayList<>();
+        long wildcardDelay = -1;
+        long agentDelay = -1;
+        boolean agentGroupFound = false;
+
+        // 当前分组：连续的 User-agent 行开始一个分组，遇到规则行后再出现 User-agent 时开始新分组
+        boolean groupIsWildcard = false;
+        boolean groupIsAgent = false;
+        boolean inRules = false;
+        try (BufferedReader reader = new BufferedReader(new StringReader(text))) {
+            for (String line; (line = reader.readLine()) != null; ) {
+                int comment = line.indexOf('#');
+                if (comment >= 0) {
+                    line = line.substring(0, comment);
+                }
+                int colon = line.indexOf(':');
+                if (colon < 0) {
+                    continue;
+                }
+                String field = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+                String value = line.substring(colon + 1).trim();
+
+                switch (field) {
+                    case "sitemap":
+                        if (!value.isEmpty()) {
+                            sitemaps.add(value);
+                        }
+                        break;
+                    case "user-agent":
+                        if (inRules) {
+                            groupIsWildcard = false;
+                            groupIsAgent = false;
+                            inRules = false;
+                        }
+                        String name = value.toLowerCase(Locale.ROOT);
+                        if (name.equals("*")) {
+                            groupIsWildcard = true;
+                        } else if (!name.isEmpty() && agent.contains(name)) {
+                            groupIsAgent = true;
+                            agentGroupFound = true;
+                        }
+                        break;
+                    case "allow":
+                    case "disallow":
+                        inRules = true;
+                        if (value.isEmpty()) {
+                            break; // 空的 Disallow 表示全部允许
+                        }
+                        Rule rule = new Rule(value, field.equals("allow"));
+                        if (groupIsAgent) {
+                            agentRules.add(rule);
+                        }
+                        if (groupIsWildcard) {
+                            wildcardRules.add(rule);
+                        }
+                        break;
+                    case "crawl-delay":
+                        inRules = true;
+                        long delay = parseDelayMillis(value);
+                        if (groupIsAgent) {
+                            agentDelay = delay;
+                        }
+                        if (groupIsWildcard) {
+                            wildcardDelay = delay;
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } catch (IOException e) {
+            // 读取字符串不会失败
+        }
+        return agentGroupFound
+                ? new RobotsTxt(sitemaps, agentRules, agentDelay)
+                : new RobotsTxt(sitemaps, wildcardRules, wildcardDelay);
+    }
+
+    /**
+     * 声明的 Sitemap 地址
+     */
+    public List<String> sitemaps() {
+        return Collections.unmodifiableList(sitemaps);
+    }
+
+    /**
+     * Crawl-delay（毫秒），没有声明时返回 -1
+     */
+    public long crawlDelayMillis() {
+        return crawlDelayMillis;
+    }
+
+    /**
+     * 是否允许抓取该URL：匹配最长的规则生效，长度相同时 Allow 优先
+     */
+    public boolean isAllowed(String url) {
+        if (rules.isEmpty()) {
+            return true;
+        }
+        String path;
+        try {
+            URI uri = URI.create(url);
+            path = (uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath())
+                    + (uri.getRawQuery() != null ? "?" + uri.getRawQuery() : "");
+        } catch (IllegalArgumentException e) {
+            return true;
+        }
+        Rule best = null;
+        for (Rule rule : rules) {
+            if (matches(rule.pattern, path) && (best == null || rule.pattern.length() > best.pattern.length()
+                    || (rule.pattern.length() == best.pattern.length() && rule.allow))) {
+                best = rule;
+            }
+        }
+        return best == null || best.allow;
+    }
+
+    /**
+     * 路径是否匹配规则：* 匹配任意字符，结尾的 $ 表示必须匹配到路径末尾，否则按前缀匹配
+     * 贪心的双指针匹配，失配时回到最近的 * 多吞一个字符，时间为 O(规则长度 × 路径长度)
+     */
+    static boolean matches(String pattern, String path) {
+        boolean anchored = pattern.endsWith("$");
+        int end = anchored ? pattern.length() - 1 : pattern.length();
+        int p = 0;
+        int s = 0;
+        int star = -1; // 最近一个 * 在规则中的位置
+        int mark = 0; // 该 * 目前吞到的路径位置
+        while (s < path.length()) {
+            if (p < end && pattern.charAt(p) == '*') {
+                star = p++;
+                mark = s;
+            } else if (p < end && pattern.charAt(p) == path.charAt(s)) {
+                p++;
+                s++;
+            } else if (p == end && !anchored) {
+                // 前缀匹配：规则已用完，路径剩余部分不必再看
+                return true;
+            } else if (star >= 0) {
+                p = star + 1;
+                s = ++mark;
+            } else {
+                return false;
+            }
+        }
+        while (p < end && pattern.charAt(p) == '*') {
+            p++;
+        }
+        return p == end;
+    }
+
+    private static long parseDelayMillis(String value) {
+        try {
+            double seconds = Double.parseDouble(value);
+            return seconds >= 0 ? (long) (seconds * 1000) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,491 @@
+package com.media;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 分段下载器 - 通过HTTP Range将大文件拆分为多个区段并发下载
+ * 每个区段按各自的偏移量直接写入同一个预分配文件，服务器不支持Range时回退为单连接下载
+ * 下载过程写入 .part 文件并在旁边保存断点信息，中断后再次运行会从断点续传，完成后原子地重命名为目标文件
+ */
+public class SegmentedDownloader {
+    private static final Logger logger = LoggerFactory.getLogger(SegmentedDownloader.class);
+    private static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36";
+
+    public static final String PART_SUFFIX = ".part";
+    public static final String CHECKPOINT_SUFFIX = ".part.json";
+
+    private static final int DEFAULT_SEGMENTS = 4; // 默认并发分段数
+    private static final long MIN_SEGMENT_SIZE = 4L * 1024 * 1024; // 每段至少4MB，小文件不拆分
+    private static final int MAX_SEGMENT_RETRIES = 3; // 单个分段最大重试次数
+    private static final long CHECKPOINT_INTERVAL = 16L * 1024 * 1024; // 每个分段每写入16MB保存一次断点
+
+    // 分段下载线程池（守护线程，进程退出时无需显式关闭）
+    private static final ExecutorService SEGMENT_POOL = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "segment-download");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 正在下载的目标文件，防止并发任务写入同一个 .part 文件
+    private static final Set<Path> activeTargets = ConcurrentHashMap.newKeySet();
+
+    private final OkHttpClient client;
+    private final int segments;
+
+    /**
+     * 下载进度回调
+     */
+    public interface ProgressListener {
+        /**
+         * @param downloaded 已下载字节数
+         * @param total 文件总大小，未知时为 -1
+         */
+        void onProgress(long downloaded, long total);
+    }
+
+    /**
+     * 响应内容不是媒体文件（例如返回了HTML错误页），下载已中止
+     */
+    public static class UnexpectedContentException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public UnexpectedContentException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * 续传时服务器返回了完整内容（If-Range校验失败），说明远程文件已变化
+     */
+    private static class EntityChangedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        EntityChangedException(String message) {
+            super(message);
+        }
+    }
+
+    public SegmentedDownloader(OkHttpClient client) {
+        this(client, DEFAULT_SEGMENTS);
+    }
+
+    /**
+     * @param client HTTP客户端
+     * @param segments 最大并发分段数
+     */
+    public SegmentedDownloader(OkHttpClient client, int segments) {
+        if (segments < 1) {
+            throw new IllegalArgumentException("分段数必须大于0: " + segments);
+        }
+        this.client = client;
+        this.segments = segments;
+    }
+
+    /**
+     * 下载文件到指定路径
+     * @return 写入的总字节数
+     */
+    public long download(String url, Path target) throws IOException {
+        return download(url, target, (ProgressListener) null);
+    }
+
+    /**
+     * 下载文件到指定路径，每个请求附加指定的请求头（例如从浏览器抓取的 Cookie、Referer）
+     * @return 写入的总字节数
+     */
+    public long download(String url, Path target, Map<String, String> headers) throws IOException {
+        return withHeaders(headers).download(url, target);
+    }
+
+    /**
+     * 返回每个请求都附加指定请求头的下载器，与当前下载器共用连接池；headers为空时返回自身
+     */
+    public SegmentedDownloader withHeaders(Map<String, String> headers) {
+        if (headers == null || headers.isEmpty()) {
+            return this;
+        }
+        return new SegmentedDownloader(HttpClients.withHeaders(client, headers), segments);
+    }
+
+    /**
+     * 下载文件到指定路径，并回调下载进度
+     * @return 写入的总字节数
+     */
+    public long download(String url, Path target, ProgressListener listener) throws IOException {
+        return download(url, target, listener, null);
+    }
+
+    /**
+     * 下载文件到指定路径，同时把写入的数据交给 hasher 计算摘要
+     * @return 写入的总字节数
+     */
+    public long download(String url, Path target, ProgressListener listener, ContentHasher hasher) throws IOException {
+        Path key = claim(target);
+        try {
+            return downloadToTarget(url, target, listener, hasher);
+        } catch (UnexpectedContentException e) {
+            // 内容本身不对，保留 .part 续传没有意义
+            Files.deleteIfExists(target.resolveSibling(target.getFileName() + PART_SUFFIX));
+            Files.deleteIfExists(target.resolveSibling(target.getFileName() + CHECKPOINT_SUFFIX));
+            throw e;
+        } finally {
+            release(key);
+        }
+    }
+
+    /**
+     * 占用目标文件，已被其他任务（包括HLS下载）占用时抛出异常
+     * @return 用于 {@link #release(Path)} 的键
+     */
+    static Path claim(Path target) throws IOException {
+        Path key = target.toAbsolutePath().normalize();
+        if (!activeTargets.add(key)) {
+            throw new IOException("目标文件正在被其他任务下载: " + target);
+        }
+        return key;
+    }
+
+    static void release(Path key) {
+        activeTargets.remove(key);
+    }
+
+    private long downloadToTarget(String url, Path target, ProgressListener listener, ContentHasher hasher) throws IOException {
+        Path partFile = target.resolveSibling(target.getFileName() + PART_SUFFIX);
+        Path checkpointFile = target.resolveSibling(target.getFileName() + CHECKPOINT_SUFFIX);
+
+        if (url.startsWith("file:")) {
+            long total = copyLocalFile(url, partFile, listener);
+            commit(partFile, checkpointFile, target);
+            return total;
+        }
+
+        DownloadCheckpoint checkpoint = DownloadCheckpoint.load(checkpointFile);
+        if (checkpoint != null && checkpoint.canResume(url) && Files.exists(partFile)) {
+            logger.info("断点续传: {} (已完成 {}/{} 字节)", url, checkpoint.committedBytes(), checkpoint.totalBytes);
+            try {
+                long total = downloadSegments(url, partFile, checkpoint, checkpointFile, listener, hasher);
+                commit(partFile, checkpointFile, target);
+                return total;
+            } catch (EntityChangedException e) {
+                logger.warn("远程文件已变化，重新下载: {}", url);
+            }
+        }
+
+        Files.deleteIfExists(checkpointFile);
+        long total = downloadFresh(url, partFile, checkpointFile, listener, hasher);
+        commit(partFile, checkpointFile, target);
+        return total;
+    }
+
+    /**
+     * 从头开始下载到 .part 文件
+     */
+    private long downloadFresh(String url, Path partFile, Path checkpointFile,
+                               ProgressListener listener, ContentHasher hasher) throws IOException {
+        // 用 Range: bytes=0-0 探测：206 表示支持分段，并可从 Content-Range 得到总大小
+        Request probeRequest = newRequest(url)
+                .header("Range", "bytes=0-0")
+                .build();
+
+        DownloadCheckpoint checkpoint;
+        Response probe = client.newCall(probeRequest).execute();
+        try {
+            if (probe.code() != 206) {
+                if (!probe.isSuccessful()) {
+                    throw new IOException("下载失败: HTTP " + probe.code());
+                }
+                // 服务器忽略了Range，直接复用该响应做单连接下载
+                logger.debug("服务器不支持Range，使用单连接下载: {}", url);
+                return writeSingleStream(probe, partFile, listener, hasher);
+            }
+            long total = parseTotalLength(probe.header("Content-Range"));
+            checkpoint = new DownloadCheckpoint(url, probe.header("ETag"), probe.header("Last-Modified"), total);
+            checkpoint.contentType = probe.header("Content-Type");
+        } finally {
+            probe.close();
+        }
+
+        if (checkpoint.totalBytes < 0) {
+            // 总大小未知，无法划分区段
+            try (Response response = client.newCall(newRequest(url).build()).execute()) {
+                if (!response.isSuccessful()) {
+                    throw new IOException("下载失败: HTTP " + response.code());
+                }
+                return writeSingleStream(response, partFile, listener, hasher);
+            }
+        }
+
+        long total = checkpoint.totalBytes;
+        int segmentCount = (int) Math.max(1, Math.min(segments, total / MIN_SEGMENT_SIZE));
+        long segmentSize = (total + segmentCount - 1) / segmentCount;
+        for (int i = 0; i < segmentCount; i++) {
+            long start = i * segmentSize;
+            long end = Math.min(total, start + segmentSize) - 1;
+            checkpoint.segments.add(new DownloadCheckpoint.Segment(start, end));
+        }
+        logger.debug("分段下载: {} ({} 字节, {} 段)", url, total, segmentCount);
+
+        try {
+            return downloadSegments(url, partFile, checkpoint, checkpointFile, listener, hasher);
+        } catch (EntityChangedException e) {
+            throw new IOException("下载过程中远程文件发生变化: " + url, e);
+        }
+    }
+
+    /**
+     * 并发下载断点中所有未完成的区段，失败时保留 .part 和断点文件供下次续传
+     */
+    private long downloadSegments(String url, Path partFile, DownloadCheckpoint checkpoint, Path checkpointFile,
+                                  ProgressListener listener, ContentHasher hasher) throws IOException {
+        long total = checkpoint.totalBytes;
+        AtomicLong downloaded = new AtomicLong(checkpoint.committedBytes());
+        AtomicBoolean aborted = new AtomicBoolean();
+        String validator = checkpoint.validator();
+
+        try (FileSink sink = FileSink.open(partFile)) {
+            // 预分配文件，各区段按偏移量写入
+            sink.preallocate(total);
+            sink.setHasher(hasher);
+            sink.setThrottle(BandwidthGovernor.getDefault().forUrl(url));
+
+            try {
+                List<DownloadCheckpoint.Segment> pending = new ArrayList<>();
+                for (DownloadCheckpoint.Segment segment : checkpoint.segments) {
+                    if (!segment.isComplete()) {
+                        pending.add(segment);
+                    }
+                }
+
+                if (pending.size() == 1) {
+                    downloadSegment(url, validator, sink, pending.get(0), checkpoint, checkpointFile,
+                            downloaded, total, aborted, listener);
+                } else if (!pending.isEmpty()) {
+                    List<Future<?>> futures = new ArrayList<>();
+                    for (DownloadCheckpoint.Segment segment : pending) {
+                        futures.add(SEGMENT_POOL.submit(() -> {
+                            downloadSegment(url, validator, sink, segment, checkpoint, checkpointFile,
+                                    downloaded, total, aborted, listener);
+                            return null;
+                        }));
+                    }
+                    awaitSegments(futures, aborted);
+                }
+            } finally {
+                // 无论成功与否都记录最终进度
+                checkpoint.save(checkpointFile, sink.channel());
+            }
+        }
+
+        return total;
+    }
+
+    /**
+     * 等待所有分段完成，任一分段失败则通知其余分段停止，并等待它们退出后再抛出异常
+     */
+    private static void awaitSegments(List<Future<?>> futures, AtomicBoolean aborted) throws IOException {
+        IOException failure = null;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                aborted.set(true);
+                if (failure == null) {
+                    Throwable cause = e.getCause();
+                    failure = cause instanceof IOException ? (IOException) cause
+                            : new IOException("分段下载失败: " + cause.getMessage(), cause);
+                }
+            } catch (InterruptedException e) {
+                aborted.set(true);
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("分段下载被中断");
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * 下载单个区段，连接中断时从已写入的位置继续，并定期保存断点
+     */
+    private void downloadSegment(String url, String validator, FileSink sink,
+                                 DownloadCheckpoint.Segment segment, DownloadCheckpoint checkpoint,
+                                 Path checkpointFile, AtomicLong downloaded, long total,
+                                 AtomicBoolean aborted, ProgressListener listener) throws IOException {
+        long end = segment.end;
+        long[] sinceCheckpoint = {0};
+        IOException lastError = null;
+
+        for (int attempt = 1; attempt <= MAX_SEGMENT_RETRIES && !segment.isComplete() && !aborted.get(); attempt++) {
+            long position = segment.position;
+            Request.Builder builder = newRequest(url)
+                    .header("Range", "bytes=" + position + "-" + end);
+            if (validator != null) {
+                builder.header("If-Range", validator);
+            }
+
+            try (Response response = client.newCall(builder.build()).execute()) {
+                if (response.code() == 200) {
+                    throw new EntityChangedException("服务器返回了完整内容而非分段: " + url);
+                }
+                if (response.code() != 206) {
+                    throw new IOException("分段请求未返回206: HTTP " + response.code());
+                }
+
+                sink.transfer(response.body().source(), position, end - position + 1, (newPosition, bytes) -> {
+                    if (newPosition - bytes == 0) {
+                        checkContent(sink, checkpoint.contentType, url);
+                    }
+                    checkpoint.advance(segment, newPosition);
+
+                    sinceCheckpoint[0] += bytes;
+                    if (sinceCheckpoint[0] >= CHECKPOINT_INTERVAL) {
+                        checkpoint.save(checkpointFile, sink.channel());
+                        sinceCheckpoint[0] = 0;
+                    }
+
+                    long current = downloaded.addAndGet(bytes);
+                    if (listener != null) {
+                        listener.onProgress(current, total);
+                    }
+                    return !aborted.get();
+                });
+            } catch (EntityChangedException | UnexpectedContentException e) {
+                throw e;
+            } catch (IOException e) {
+                lastError = e;
+                logger.warn("分段 {}-{} 第 {} 次下载失败: {}", segment.start, end, attempt, e.getMessage());
+            }
+        }
+
+        if (!segment.isComplete()) {
+            throw lastError != null ? lastError
+                    : new IOException("分段数据不完整: " + segment.start + "-" + end + " 停在 " + segment.position);
+        }
+    }
+
+    /**
+     * 单连接顺序写入整个响应体（无法续传，失败时删除 .part 文件）
+     */
+    private long writeSingleStream(Response response, Path partFile,
+                                   ProgressListener listener, ContentHasher hasher) throws IOException {
+        long total = response.body().contentLength();
+        String url = response.request().url().toString();
+        String contentType = response.header("Content-Type");
+
+        try (FileSink sink = FileSink.create(partFile)) {
+            sink.preallocate(total);
+            sink.setHasher(hasher);
+            sink.setThrottle(BandwidthGovernor.getDefault().forUrl(url));
+            long written = sink.transfer(response.body().source(), 0, -1, (position, bytes) -> {
+                if (position == bytes) {
+                    checkContent(sink, contentType, url);
+                }
+                if (listener != null) {
+                    listener.onProgress(position, total);
+                }
+                return true;
+            });
+            if (written != total) {
+                sink.truncate(written);
+            }
+            return written;
+        } catch (IOException e) {
+            Files.deleteIfExists(partFile);
+            throw e;
+        }
+    }
+
+    /**
+     * 第一个数据块写入后嗅探文件头：内容是HTML，或无法识别且服务器声明为HTML时中止下载
+     */
+    private static void checkContent(FileSink sink, String contentType, String url) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(MediaTypes.SNIFF_LENGTH);
+        sink.channel().read(head, 0);
+        head.flip();
+        MediaTypes.Type type = MediaTypes.sniff(head);
+        if (type == MediaTypes.Type.HTML
+                || (type == null && MediaTypes.fromContentType(contentType) == MediaTypes.Type.HTML)) {
+            throw new UnexpectedContentException("返回的是HTML页面而不是媒体文件: " + url);
+        }
+    }
+
+    /**
+     * 本地文件（file: URL）直接通过 transferFrom 复制，不经过用户态缓冲区
+     */
+    private static long copyLocalFile(String url, Path partFile, ProgressListener listener) throws IOException {
+        Path source = Paths.get(URI.create(url));
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileSink sink = FileSink.create(partFile)) {
+            long size = in.size();
+            sink.preallocate(size);
+            long copied = sink.transferFrom(in, size);
+            if (listener != null) {
+                listener.onProgress(copied, size);
+            }
+            return copied;
+        } catch (IOException e) {
+            Files.deleteIfExists(partFile);
+            throw e;
+        }
+    }
+
+    /**
+     * 下载完成：将 .part 文件原子地重命名为目标文件，并删除断点文件
+     */
+    private static void commit(Path partFile, Path checkpointFile, Path target) throws IOException {
+        try {
+            Files.move(partFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(partFile, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.deleteIfExists(checkpointFile);
+        logger.debug("已完成: {} - {}", target, FileSink.metrics());
+    }
+
+    /**
+     * 从 Content-Range 头（如 "bytes 0-0/12345"）解析文件总大小，未知时返回 -1
+     */
+    private static long parseTotalLength(String contentRange) {
+        if (contentRange == null) {
+            return -1;
+        }
+        int slash = contentRange.lastIndexOf('/');
+        if (slash < 0) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(contentRange.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static Request.Builder newRequest(String url) {
+        return new Request.Builder()
+                .url(url)
+                .header("User-Agent", USER_AGENT);
+    }
+}
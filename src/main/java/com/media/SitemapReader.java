@@ -0,0 +1,202 @@
+package com.media;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Sitemap 读取 - 用StAX拉取式解析器边下载边解析 sitemap.xml（包括 .gz 压缩的），不把整个文件读入内存
+ * 遇到 sitemap 索引时递归读取其中列出的子 sitemap；每个页面地址连同 lastmod 立即交给回调
+ */
+public final class SitemapReader {
+    private static final Logger logger = LoggerFactory.getLogger(SitemapReader.class);
+
+    // 可通过 -Dmedia.crawl.maxSitemaps 调整
+    private static final int MAX_SITEMAPS = Integer.getInteger("media.crawl.maxSitemaps", 1000); // 最多读取的 sitemap 文件数
+    private static final int MAX_INDEX_DEPTH = 3; // sitemap 索引的最大嵌套层数
+
+    private static final String SITEMAP_NS = "http://www.sitemaps.org/schemas/sitemap/0.9";
+    private static final XMLInputFactory XML_FACTORY = newFactory();
+
+    private final OkHttpClient client;
+    private final String userAgent;
+    private final Set<String> visited = new HashSet<>();
+    private int pages;
+
+    public SitemapReader(OkHttpClient client, String userAgent) {
+        this.client = client;
+        this.userAgent = userAgent;
+    }
+
+    /**
+     * 读取一个 sitemap 或 sitemap 索引
+     * @param onPage 每个页面地址和它的 lastmod（毫秒时间戳，没有时为null）
+     * @return 是否成功读取（不存在或不是 sitemap 时返回false）
+     */
+    public boolean read(String sitemapUrl, BiConsumer<String, Long> onPage) {
+        return read(sitemapUrl, onPage, 0);
+    }
+
+    /**
+     * 已读取到的页面地址数
+     */
+    public int pages() {
+        return pages;
+    }
+
+    private boolean read(String sitemapUrl, BiConsumer<String, Long> onPage, int depth) {
+        if (depth > MAX_INDEX_DEPTH || visited.size() >= MAX_SITEMAPS || !visited.add(sitemapUrl)) {
+            return false;
+        }
+        Request request = new Request.Builder()
+                .url(sitemapUrl)
+                .header("User-Agent", userAgent)
+                .build();
+        try (Response response = client.newCall(request).execute()) {
+            ResponseBody body = response.body();
+            if (!response.isSuccessful() || body == null) {
+                logger.info("没有 sitemap: {} ({})", sitemapUrl, response.code());
+                return false;
+            }
+            try (InputStream in = decompress(body.byteStream())) {
+                parse(in, sitemapUrl, onPage, depth);
+            }
+            return true;
+        } catch (IOException | XMLStreamException e) {
+            logger.warn("读取 sitemap 失败: {} ({})", sitemapUrl, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 拉取式解析：&lt;urlset&gt; 中的 &lt;url&gt; 逐个回调，&lt;sitemapindex&gt; 中的 &lt;sitemap&gt; 读完一个就递归读取一个
+     * 只接受 sitemap 命名空间（或没有命名空间）中 &lt;url&gt;/&lt;sitemap&gt; 的直接子元素 loc 和 lastmod，
+     * 扩展元素（例如 &lt;image:loc&gt;、&lt;video:loc&gt;）不会覆盖页面地址
+     */
+    private void parse(InputStream in, String sitemapUrl, BiConsumer<String, Long> onPage, int depth)
+            throws XMLStreamException {
+        XMLStreamReader reader = XML_FACTORY.createXMLStreamReader(in);
+        try {
+            String loc = null;
+            String lastmod = null;
+            int level = 0; // 当前元素的嵌套层数
+            int entryLevel = -1; // 当前 <url>/<sitemap> 的层数，不在其中时为-1
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    level++;
+                    if (!isSitemapElement(reader)) {
+                        continue;
+                    }
+                    String name = reader.getLocalName();
+                    if (name.equals("url") || name.equals("sitemap")) {
+                        entryLevel = level;
+                        loc = null;
+                        lastmod = null;
+                    } else if (level == entryLevel + 1 && name.equals("loc")) {
+                        loc = reader.getElementText().trim();
+                        level--; // getElementText 已读到结束标签
+                    } else if (level == entryLevel + 1 && name.equals("lastmod")) {
+                        lastmod = reader.getElementText().trim();
+                        level--;
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (level-- != entryLevel || !isSitemapElement(reader)) {
+                        continue;
+                    }
+                    entryLevel = -1;
+                    if (loc == null || loc.isEmpty()) {
+                        continue;
+                    }
+                    String name = reader.getLocalName();
+                    if (name.equals("url")) {
+                        pages++;
+                        onPage.accept(loc, parseLastmod(lastmod));
+                    } else if (name.equals("sitemap")) {
+                        read(loc, onPage, depth + 1);
+                    }
+                    loc = null;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        logger.info("已读取 sitemap: {}", sitemapUrl);
+    }
+
+    /**
+     * 元素属于 sitemap 协议的命名空间；不少站点省略 xmlns，没有命名空间的元素也接受
+     */
+    private static boolean isSitemapElement(XMLStreamReader reader) {
+        String namespace = reader.getNamespaceURI();
+        return namespace == null || namespace.isEmpty() || namespace.equals(SITEMAP_NS);
+    }
+
+    /**
+     * 按内容判断是否是gzip（.gz 文件通常以 application/octet-stream 返回，不会被HTTP层自动解压）
+     */
+    private static InputStream decompress(InputStream body) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(body);
+        in.mark(2);
+        int b1 = in.read();
+        int b2 = in.read();
+        in.reset();
+        return b1 == 0x1f && b2 == 0x8b ? new GZIPInputStream(in) : in;
+    }
+
+    /**
+     * 解析 W3C Datetime 格式的 lastmod（完整时间或只有日期），无法解析时返回null
+     */
+    static Long parseLastmod(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            return OffsetDateTime.parse(value).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            // 不是完整时间
+        }
+        try {
+            return Instant.parse(value).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            // 不是UTC时间
+        }
+        try {
+            return LocalDate.parse(value.length() > 10 ? value.substring(0, 10) : value)
+                    .atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 关闭DTD和外部实体，防止XXE
+     */
+    private static XMLInputFactory newFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        return factory;
+    }
+}
@@ -0,0 +1,136 @@
+package com.media;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URI;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 静态探测 - 不启动浏览器，直接用HTTP获取页面并扫描媒体链接，同时检查页面是否依赖客户端渲染
+ * 自动模式据此决定是否需要浏览器；按主机记住结果，静态解析从未成功过的站点之后直接使用浏览器
+ */
+public final class StaticProbe {
+    private static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36";
+
+    // 空的应用挂载点：React/Vue/Next/Nuxt/Angular 等框架渲染前的页面只有一个空容器
+    private static final Pattern EMPTY_APP_ROOT = Pattern.compile(
+            "<(div|main|app-root)\\b[^>]*?\\bid\\s*=\\s*[\"']?(root|app|__next|__nuxt|app-root)[\"']?[^>]*>\\s*</\\1\\s*>"
+                    + "|<(app-root)\\b[^>]*>\\s*</app-root\\s*>",
+            Pattern.CASE_INSENSITIVE);
+    // 常见播放器的初始化代码（小写）：媒体地址由脚本在运行时设置，静态页面中通常看不到
+    private static final String[] PLAYER_BOOTSTRAPS = {
+            "videojs(", "jwplayer(", "new hls(", "hls.loadsource", "shaka.player", "dashjs.mediaplayer",
+            "flowplayer(", "new plyr(", "new dplayer(", "new xgplayer", "new aliplayer(", "tcplayer(",
+            "new mediasource("};
+
+    // 主机 -> 静态解析是否成功过；false 表示只失败过，之后直接使用浏览器
+    private static final Map<String, Boolean> staticWorks = new ConcurrentHashMap<>();
+
+    private StaticProbe() {
+    }
+
+    /**
+     * 静态探测的结果
+     */
+    public static final class Result {
+        public final String pageUrl; // 跟随重定向之后的地址
+        public final Set<String> mediaUrls;
+        public final String clientRendering; // 客户端渲染的迹象，没有时为null
+
+        Result(String pageUrl, Set<String> mediaUrls, String clientRendering) {
+            this.pageUrl = pageUrl;
+            this.mediaUrls = mediaUrls;
+            this.clientRendering = clientRendering;
+        }
+
+        /**
+         * 需要浏览器的原因；静态结果可以直接使用时返回null
+         */
+        public String escalation() {
+            if (mediaUrls.isEmpty()) {
+                return clientRendering != null ? "未找到媒体，" + clientRendering : "静态页面中未找到媒体";
+            }
+            return clientRendering;
+        }
+    }
+
+    /**
+     * 获取页面并扫描媒体链接（受 PageStream 的页面大小上限约束）
+     */
+    public static Result fetch(OkHttpClient client, String url) throws IOException {
+        Request request = new Request.Builder()
+                .url(url)
+                .header("User-Agent", USER_AGENT)
+                .build();
+        try (Response response = client.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                throw new IOException("HTTP请求失败: " + response.code());
+            }
+            ResponseBody body = response.body();
+            if (body == null) {
+                throw new IOException("响应体为空");
+            }
+            String html;
+            try (Reader reader = PageStream.open(body.byteStream(), response.header("Content-Type"), body.contentLength())) {
+                html = PageStream.readFully(reader);
+            }
+            String pageUrl = response.request().url().toString();
+            return new Result(pageUrl, MediaUrlScanner.scan(html, pageUrl), detectClientRendering(html));
+        }
+    }
+
+    /**
+     * 检查页面是否依赖客户端渲染，返回发现的迹象，没有时返回null
+     */
+    static String detectClientRendering(String html) {
+        Matcher root = EMPTY_APP_ROOT.matcher(html);
+        if (root.find()) {
+            return "空的应用挂载点 (" + (root.group(2) != null ? "#" + root.group(2) : "<app-root>") + ")";
+        }
+        String lower = html.toLowerCase(Locale.ROOT);
+        for (String bootstrap : PLAYER_BOOTSTRAPS) {
+            if (lower.contains(bootstrap)) {
+                return "播放器初始化脚本 (" + bootstrap + ")";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 该主机是否应跳过静态探测直接使用浏览器
+     */
+    public static boolean prefersBrowser(String url) {
+        return Boolean.FALSE.equals(staticWorks.get(hostOf(url)));
+    }
+
+    /**
+     * 记录一次探测结果：只要静态解析在该主机上成功过一次，之后的页面仍先尝试静态解析
+     */
+    public static void record(String url, boolean staticSucceeded) {
+        String host = hostOf(url);
+        if (staticSucceeded) {
+            staticWorks.put(host, true);
+        } else {
+            staticWorks.putIfAbsent(host, false);
+        }
+    }
+
+    private static String hostOf(String url) {
+        try {
+            String host = URI.create(url).getHost();
+            return host != null ? host.toLowerCase(Locale.ROOT) : "";
+        } catch (IllegalArgumentException e) {
+            return "";
+        }
+    }
+}
@@ -13,7 +13,6 @@ import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.util.concurrent.TimeUnit;
 
 /**
  * 文本翻译器 - 将指定文件夹中的所有txt文件翻译成中文
@@ -22,11 +21,7 @@ import java.util.concurrent.TimeUnit;
 public class TextTranslator {
     private static final Logger logger = LoggerFactory.getLogger(TextTranslator.class);
     private static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36";
-    private static final OkHttpClient client = new OkHttpClient.Builder()
-            .connectTimeout(30, TimeUnit.SECONDS)
-            .readTimeout(60, TimeUnit.SECONDS)
-            .writeTimeout(60, TimeUnit.SECONDS)
-            .build();
+    private static final OkHttpClient client = HttpClients.shared();
 
     private static int translatedCount = 0;
     private static int failedCount = 0;
@@ -0,0 +1,242 @@
+package com.media;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * URL规范化 - 把指向同一页面的不同写法统一为一种，用于爬虫去重：
+ * 协议和主机名小写、去掉默认端口、解析 . 和 .. 路径段、统一百分号编码、去掉锚点、
+ * 查询参数排序并去掉跟踪参数（utm_* 等，可通过 -Dmedia.crawl.stripParams 配置）
+ * 去重指纹还忽略路径末尾的斜杠；规范化后的URL本身保留斜杠，以免相对链接解析到错误的目录
+ */
+public final class UrlCanonicalizer {
+    // 去掉的查询参数，逗号分隔，以 * 结尾表示前缀匹配
+    private static final String[] STRIP_PARAMS = System.getProperty("media.crawl.stripParams",
+            "utm_*,gclid,fbclid,msclkid,mc_cid,mc_eid,_ga,_gl,yclid,spm").split(",");
+
+    private UrlCanonicalizer() {
+    }
+
+    /**
+     * 规范化URL；不是 http/https 地址或无法解析时返回null
+     */
+    public static String canonicalize(String url) {
+        if (url == null) {
+            return null;
+        }
+        URI uri;
+        try {
+            uri = new URI(encodeIllegal(url.trim()));
+        } catch (URISyntaxException e) {
+            return null;
+        }
+        String scheme = uri.getScheme() != null ? uri.getScheme().toLowerCase(Locale.ROOT) : null;
+        String host = uri.getHost() != null ? uri.getHost().toLowerCase(Locale.ROOT) : null;
+        if (!("http".equals(scheme) || "https".equals(scheme)) || host == null || host.isEmpty()) {
+            return null;
+        }
+
+        StringBuilder result = new StringBuilder(url.length());
+        result.append(scheme).append("://");
+        if (uri.getRawUserInfo() != null) {
+            result.append(uri.getRawUserInfo()).append('@');
+        }
+        result.append(host);
+        int port = uri.getPort();
+        if (port != -1 && !(port == 80 && "http".equals(scheme)) && !(port == 443 && "https".equals(scheme))) {
+            result.append(':').append(port);
+        }
+
+        String path = normalizeEncoding(removeDotSegments(uri.getRawPath()));
+        result.append(path.isEmpty() ? "/" : path);
+
+        String query = canonicalQuery(uri.getRawQuery());
+        if (!query.isEmpty()) {
+            result.append('?').append(query);
+        }
+        return result.toString();
+    }
+
+    /**
+     * 规范化URL的64位指纹，末尾斜杠不同的URL指纹相同
+     */
+    public static long fingerprint(String canonicalUrl) {
+        int end = canonicalUrl.indexOf('?');
+        if (end < 0) {
+            end = canonicalUrl.length();
+        }
+        // 路径从协议和主机之后的第一个斜杠开始，根路径的斜杠保留
+        int pathStart = canonicalUrl.indexOf('/', canonicalUrl.indexOf("://") + 3);
+        int trimmed = end;
+        while (pathStart >= 0 && trimmed > pathStart + 1 && canonicalUrl.charAt(trimmed - 1) == '/') {
+            trimmed--;
+        }
+        String key = trimmed == end ? canonicalUrl : canonicalUrl.substring(0, trimmed) + canonicalUrl.substring(end);
+        return hash64(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 规范化后计算指纹；无法规范化的URL返回0
+     */
+    public static long fingerprintOf(String url) {
+        String canonical = canonicalize(url);
+        return canonical != null ? fingerprint(canonical) : 0;
+    }
+
+    /**
+     * 页面中的链接常带有空格、竖线、中文等URI不允许的字符，解析前按UTF-8百分号编码
+     */
+    private static String encodeIllegal(String url) {
+        StringBuilder result = null;
+        for (int i = 0; i < url.length(); i++) {
+            char c = url.charAt(i);
+            boolean illegal = c <= 0x20 || c >= 0x7f || "\"<>\\^`{|}".indexOf(c) >= 0;
+            if (illegal && result == null) {
+                result = new StringBuilder(url.length() + 16).append(url, 0, i);
+            }
+            if (result == null) {
+                continue;
+            }
+            if (!illegal) {
+                result.append(c);
+                continue;
+            }
+            int end = Character.isHighSurrogate(c) && i + 1 < url.length() ? i + 2 : i + 1;
+            for (byte b : url.substring(i, end).getBytes(StandardCharsets.UTF_8)) {
+                result.append('%').append(String.format("%02X", b & 0xff));
+            }
+            i = end - 1;
+        }
+        return result != null ? result.toString() : url;
+    }
+
+    /**
+     * 按 RFC 3986 5.2.4 去掉 . 和 .. 路径段
+     */
+    static String removeDotSegments(String path) {
+        if (path == null || path.isEmpty()) {
+            return "";
+        }
+        if (!path.contains(".")) {
+            return path;
+        }
+        List<String> output = new ArrayList<>();
+        String[] segments = path.split("/", -1);
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            boolean last = i == segments.length - 1;
+            if (segment.equals(".")) {
+                if (last) {
+                    output.add("");
+                }
+            } else if (segment.equals("..")) {
+                if (output.size() > 1) {
+                    output.remove(output.size() - 1);
+                }
+                if (last) {
+                    output.add("");
+                }
+            } else {
+                output.add(segment);
+            }
+        }
+        String result = String.join("/", output);
+        return result.startsWith("/") || !path.startsWith("/") ? result : "/" + result;
+    }
+
+    /**
+     * 百分号编码统一为大写，非保留字符（字母、数字、- . _ ~）解码
+     */
+    static String normalizeEncoding(String text) {
+        if (text.indexOf('%') < 0) {
+            return text;
+        }
+        StringBuilder result = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '%' && i + 2 < text.length() && isHex(text.charAt(i + 1)) && isHex(text.charAt(i + 2))) {
+                int value = Integer.parseInt(text.substring(i + 1, i + 3), 16);
+                if (isUnreserved(value)) {
+                    result.append((char) value);
+                } else {
+                    result.append('%').append(text.substring(i + 1, i + 3).toUpperCase(Locale.ROOT));
+                }
+                i += 2;
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * 去掉空参数和跟踪参数，按参数名排序（同名参数保持原有顺序）
+     */
+    private static String canonicalQuery(String query) {
+        if (query == null || query.isEmpty()) {
+            return "";
+        }
+        List<String> params = new ArrayList<>();
+        for (String param : query.split("&")) {
+            if (param.isEmpty()) {
+                continue;
+            }
+            int eq = param.indexOf('=');
+            String name = eq >= 0 ? param.substring(0, eq) : param;
+            if (!isStripped(name)) {
+                params.add(normalizeEncoding(param));
+            }
+        }
+        params.sort((a, b) -> paramName(a).compareTo(paramName(b)));
+        return String.join("&", params);
+    }
+
+    private static String paramName(String param) {
+        int eq = param.indexOf('=');
+        return eq >= 0 ? param.substring(0, eq) : param;
+    }
+
+    private static boolean isStripped(String name) {
+        String lower = name.toLowerCase(Locale.ROOT);
+        for (String pattern : STRIP_PARAMS) {
+            pattern = pattern.trim().toLowerCase(Locale.ROOT);
+            if (pattern.isEmpty()) {
+                continue;
+            }
+            if (pattern.endsWith("*") ? lower.startsWith(pattern.substring(0, pattern.length() - 1)) : lower.equals(pattern)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isHex(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    private static boolean isUnreserved(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '-' || c == '.' || c == '_' || c == '~';
+    }
+
+    /**
+     * 64位哈希：FNV-1a 后再做一次 murmur3 的末尾混合，使低位也分布均匀
+     */
+    private static long hash64(byte[] data) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : data) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -3,6 +3,7 @@ package com.media;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
+import okhttp3.ResponseBody;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
@@ -10,17 +11,14 @@ import org.jsoup.select.Elements;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.X509TrustManager;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.security.cert.X509Certificate;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 /**
@@ -29,52 +27,26 @@ import java.util.regex.Pattern;
 public class VSCodeDocumentDownloader {
     private static final Logger logger = LoggerFactory.getLogger(VSCodeDocumentDownloader.class);
     private static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36";
-    private static final OkHttpClient client = createUnsafeOkHttpClient();
+    private static final OkHttpClient client = HttpClients.insecure();
+    private static final SegmentedDownloader downloader = new SegmentedDownloader(HttpClients.segmented(client));
 
-    private static final Set<String> downloadedUrls = new HashSet<>();
     private static int fileCount = 0;
-
-    /**
-     * 创建不进行SSL验证的OkHttpClient（用于处理证书问题）
-     */
-    private static OkHttpClient createUnsafeOkHttpClient() {
-        try {
-            // 创建信任所有证书的TrustManager
-            TrustManager[] trustAllCerts = new TrustManager[]{
-                    new X509TrustManager() {
-                        @Override
-                        public void checkClientTrusted(X509Certificate[] chain, String authType) {}
-
-                        @Override
-                        public void checkServerTrusted(X509Certificate[] chain, String authType) {}
-
-                        @Override
-                        public X509Certificate[] getAcceptedIssuers() {
-                            return new X509Certificate[]{};
-                        }
-                    }
-            };
-
-            // 安装信任管理器
-            SSLContext sslContext = SSLContext.getInstance("SSL");
-            sslContext.init(null, trustAllCerts, new java.security.SecureRandom());
-
-            return new OkHttpClient.Builder()
-                    .connectTimeout(30, TimeUnit.SECONDS)
-                    .readTimeout(60, TimeUnit.SECONDS)
-                    .writeTimeout(60, TimeUnit.SECONDS)
-                    .sslSocketFactory(sslContext.getSocketFactory(), (X509TrustManager) trustAllCerts[0])
-                    .hostnameVerifier((hostname, session) -> true)
-                    .build();
-        } catch (Exception e) {
-            logger.error("创建OkHttpClient失败，使用默认配置", e);
-            return new OkHttpClient.Builder()
-                    .connectTimeout(30, TimeUnit.SECONDS)
-                    .readTimeout(60, TimeUnit.SECONDS)
-                    .writeTimeout(60, TimeUnit.SECONDS)
-                    .build();
-        }
-    }
+    private static final ConcurrentMap<Path, String> documentTargets = new ConcurrentHashMap<>(); // 本次运行中已写入的文档文件 -> 页面URL（没有页面索引时）
+    private static final ConcurrentMap<Path, String> videoTargets = new ConcurrentHashMap<>(); // 本次运行中已分配的视频文件 -> 视频URL
+
+    // 视频下载流水线配置
+    private static final int MAX_PENDING_DOWNLOADS = 32; // 已提交但未完成的下载任务上限
+    // 可通过 -Dmedia.crawl.robots=false / -Dmedia.crawl.sitemaps=false 关闭
+    private static final boolean USE_ROBOTS = Boolean.parseBoolean(System.getProperty("media.crawl.robots", "true")); // 遵守 robots.txt
+    private static final boolean USE_SITEMAPS = Boolean.parseBoolean(System.getProperty("media.crawl.sitemaps", "true")); // 从 sitemap 发现页面
+    // 可通过 -Dmedia.crawl.incremental=false 关闭，每次重新抓取并写入全部文档
+    private static final boolean INCREMENTAL = Boolean.parseBoolean(System.getProperty("media.crawl.incremental", "true")); // 文档模式跳过未变化的页面
+    // 可通过 -Dmedia.crawl.deleteRemoved=true 开启，只在完整爬取（没有失败、没有达到上限）时生效
+    private static final boolean DELETE_REMOVED = Boolean.parseBoolean(System.getProperty("media.crawl.deleteRemoved", "false")); // 删除本次没有出现的页面的文件
+    // 链接到图片、样式、脚本、安装包等非文档资源时不抓取
+    private static final Pattern NON_DOCUMENT = Pattern.compile(
+            "\\.(png|jpe?g|gif|svg|webp|ico|css|js|json|xml|zip|gz|tgz|pdf|exe|msi|dmg|deb|rpm|vsix)([?#]|$)",
+            Pattern.CASE_INSENSITIVE);
 
     public static void main(String[] args) {
         if (args.length == 0) {
@@ -84,10 +56,12 @@ public class VSCodeDocumentDownloader {
 
         String url = args[0];
         String outputDir = args.length > 1 ? args[1] : "./vscode-docs";
-        boolean downloadVideos = args.length > 2 && args[2].equalsIgnoreCase("--videos");
+        String mode = args.length > 2 ? args[2] : "";
 
         try {
-            if (downloadVideos) {
+            if (mode.equalsIgnoreCase("--all")) {
+                downloadAll(url, outputDir);
+            } else if (mode.equalsIgnoreCase("--videos")) {
                 downloadVideos(url, outputDir);
             } else {
                 downloadDocumentation(url, outputDir);
@@ -114,66 +88,139 @@ public class VSCodeDocumentDownloader {
         Path outputPath = Paths.get(outputDir);
         Files.createDirectories(outputPath);
 
-        // 获取主页面
-        String html = fetchPage(startUrl);
-        if (html == null) {
+        // 同一视频在多个页面出现时只下载、只保存一份
+        MediaStore store = new MediaStore(outputPath, downloader);
+
+        // 流水线：页面抓取（同时发现新链接）→ 视频链接提取 → 下载，
+        // 第一个视频在后续页面仍在抓取时就开始下载，未完成的下载达到上限时提取阶段阻塞等待
+        DownloadScheduler scheduler = DownloadScheduler.getDefault();
+        Semaphore downloadSlots = new Semaphore(MAX_PENDING_DOWNLOADS);
+        DocCrawler crawler = newCrawler(startUrl, null);
+        AtomicInteger docCount = new AtomicInteger();
+        AtomicInteger totalVideos = new AtomicInteger();
+        try (CrawlJournal journal = CrawlJournal.open(outputPath, "--videos " + startUrl)) {
+            crawler.crawl(startUrl, journal, page -> {
+                if (page.html == null) {
+                    return null;
+                }
+                docCount.incrementAndGet();
+
+                Set<String> videos = extractVideoLinks(page.doc, page.html, page.url);
+                if (videos.isEmpty()) {
+                    return null;
+                }
+                System.out.println("[" + docCount + "/" + crawler.discovered() + "] " + page.url +
+                                 " - 找到 " + videos.size() + " 个视频");
+
+                return submitVideoDownloads(videos, page.url, store, outputPath, scheduler, downloadSlots, totalVideos);
+            });
+        }
+        if (docCount.get() == 0 && !crawler.resumed()) {
             throw new RuntimeException("无法获取主页面内容");
         }
 
-        // 解析主页面，获取所有文档链接
-        Document doc = Jsoup.parse(html);
-        Set<String> docUrls = extractDocumentLinks(doc, startUrl);
+        // 取回全部名额即表示所有下载任务已结束
+        downloadSlots.acquire(MAX_PENDING_DOWNLOADS);
 
-        System.out.println("✓ 找到 " + docUrls.size() + " 个文档章节，开始扫描视频...");
         System.out.println();
-
-        // 扫描每个文档以找到视频
-        Map<String, Set<String>> videosByPage = new HashMap<>();
-        int docCount = 1;
-        for (String docUrl : docUrls) {
-            try {
-                String docHtml = fetchPage(docUrl);
-                if (docHtml != null) {
-                    Set<String> videos = extractVideoLinks(docHtml, docUrl);
-                    if (!videos.isEmpty()) {
-                        videosByPage.put(docUrl, videos);
-                        System.out.println("[" + docCount + "/" + docUrls.size() + "] " + docUrl + 
-                                         " - 找到 " + videos.size() + " 个视频");
-                    }
-                }
-                docCount++;
-            } catch (Exception e) {
-                System.err.println("✗ 扫描失败 (" + docUrl + "): " + e.getMessage());
-            }
-        }
-
+        System.out.println("✓ 扫描了 " + docCount + " 个页面，总共找到 " + totalVideos + " 个MP4视频");
+        System.out.println("  " + crawler.pacer().metrics());
+        System.out.println("  " + FileSink.metrics());
         System.out.println();
-        int totalVideos = videosByPage.values().stream().mapToInt(Set::size).sum();
-        System.out.println("✓ 总共找到 " + totalVideos + " 个MP4视频");
+        System.out.println("╔══════════════════════════════════════════╗");
+        System.out.println("✓ 视频下载完成!");
+        System.out.println("  保存路径: " + outputPath.toAbsolutePath());
+        System.out.println("╚══════════════════════════════════════════╝");
+    }
+
+    /**
+     * 同时下载文档和视频：每个页面只抓取一次、只解析一次，同一个DOM既用于提取视频也用于提取文本
+     */
+    public static void downloadAll(String startUrl, String outputDir) throws Exception {
+        System.out.println("╔══════════════════════════════════════════╗");
+        System.out.println("║      VS Code 文档和视频下载 v1.0         ║");
+        System.out.println("╚══════════════════════════════════════════╝");
         System.out.println();
+        System.out.println("开始爬取文档和视频: " + startUrl);
 
-        // 下载视频
-        int downloadCount = 1;
-        for (Map.Entry<String, Set<String>> entry : videosByPage.entrySet()) {
-            String pageUrl = entry.getKey();
-            for (String videoUrl : entry.getValue()) {
+        // 创建输出目录
+        Path outputPath = Paths.get(outputDir);
+        Files.createDirectories(outputPath);
+
+        MediaStore store = new MediaStore(outputPath, downloader);
+
+        // 与视频模式相同的流水线，提取阶段同时保存文本
+        DownloadScheduler scheduler = DownloadScheduler.getDefault();
+        Semaphore downloadSlots = new Semaphore(MAX_PENDING_DOWNLOADS);
+        DocCrawler crawler = newCrawler(startUrl, null);
+        AtomicInteger docCount = new AtomicInteger();
+        AtomicInteger totalVideos = new AtomicInteger();
+        try (CrawlJournal journal = CrawlJournal.open(outputPath, "--all " + startUrl)) {
+            crawler.crawl(startUrl, journal, page -> {
+                if (page.html == null) {
+                    return null;
+                }
+
+                System.out.println("[" + docCount.incrementAndGet() + "/" + crawler.discovered() + "] 下载: " + page.url);
                 try {
-                    System.out.println("[" + downloadCount + "/" + totalVideos + "] 下载视频...");
-                    downloadVideoFile(videoUrl, pageUrl, outputPath);
-                    downloadCount++;
+                    // 先提取视频：提取文本时会从DOM中移除脚本、导航等元素
+                    Set<String> videos = extractVideoLinks(page.doc, page.html, page.url);
+                    saveDocument(page, outputPath, null);
+                    if (!videos.isEmpty()) {
+                        System.out.println("  找到 " + videos.size() + " 个视频");
+                        return submitVideoDownloads(videos, page.url, store, outputPath, scheduler, downloadSlots,
+                                totalVideos);
+                    }
                 } catch (Exception e) {
                     System.err.println("✗ 下载失败: " + e.getMessage());
                 }
-            }
+                return null;
+            });
         }
+        if (docCount.get() == 0 && !crawler.resumed()) {
+            throw new RuntimeException("无法获取主页面内容");
+        }
+
+        // 取回全部名额即表示所有下载任务已结束
+        downloadSlots.acquire(MAX_PENDING_DOWNLOADS);
 
+        System.out.println();
+        System.out.println("  " + HttpClients.metrics());
+        System.out.println("  " + crawler.pacer().metrics());
+        System.out.println("  " + FileSink.metrics());
         System.out.println();
         System.out.println("╔══════════════════════════════════════════╗");
-        System.out.println("✓ 视频下载完成!");
+        System.out.println("✓ 下载完成！共生成 " + fileCount + " 个文档，找到 " + totalVideos + " 个MP4视频");
         System.out.println("  保存路径: " + outputPath.toAbsolutePath());
         System.out.println("╚══════════════════════════════════════════╝");
     }
 
+    /**
+     * 把一个页面中的视频提交到调度器下载，未完成的下载数达到上限时阻塞
+     * @param videoCount 已提交的视频数，用于编号
+     * @return 该页面的视频全部下载结束（无论成功与否）时完成
+     */
+    private static CompletableFuture<Void> submitVideoDownloads(Set<String> videos, String pageUrl, MediaStore store,
+                                                                Path outputPath, DownloadScheduler scheduler,
+                                                                Semaphore downloadSlots, AtomicInteger videoCount) {
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        for (String videoUrl : videos) {
+            String label = "[视频 " + videoCount.incrementAndGet() + "]";
+            downloadSlots.acquireUninterruptibly();
+            tasks.add(scheduler.<Void>submit(videoUrl, () -> {
+                downloadVideoFile(store, videoUrl, pageUrl, outputPath, label);
+                return null;
+            }).handle((result, e) -> {
+                downloadSlots.release();
+                if (e != null) {
+                    System.err.println("✗ " + label + " 下载失败: " + e.getMessage());
+                }
+                return null;
+            }));
+        }
+        return CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0]));
+    }
+
     /**
      * 下载VS Code文档
      */
@@ -188,32 +235,51 @@ public class VSCodeDocumentDownloader {
         Path outputPath = Paths.get(outputDir);
         Files.createDirectories(outputPath);
 
-        // 获取主页面
-        String html = fetchPage(startUrl);
-        if (html == null) {
-            throw new RuntimeException("无法获取主页面内容");
-        }
-
-        // 解析主页面，获取所有文档链接
-        Document doc = Jsoup.parse(html);
-        Set<String> docUrls = extractDocumentLinks(doc, startUrl);
-
-        System.out.println("✓ 找到 " + docUrls.size() + " 个文档章节");
-        System.out.println();
-
-        // 下载每个文档
-        int count = 1;
-        for (String docUrl : docUrls) {
-            try {
-                System.out.println("[" + count + "/" + docUrls.size() + "] 下载: " + docUrl);
-                downloadSingleDocument(docUrl, outputPath);
-                count++;
-            } catch (Exception e) {
-                System.err.println("✗ 下载失败: " + e.getMessage());
+        // 爬取起始页面能到达的所有文档页面，边抓取边保存；页面索引记录上次的结果，未变化的页面跳过
+        AtomicInteger count = new AtomicInteger();
+        DocCrawler crawler;
+        try (PageIndex index = PageIndex.open(outputPath);
+             CrawlJournal journal = CrawlJournal.open(outputPath, "--docs " + startUrl)) {
+            crawler = newCrawler(startUrl, index);
+            if (journal.isResumed()) {
+                // 上次中断前已完成的页面不会再抓取，不能当作已删除
+                Map<String, Integer> unfinished = journal.unfinished();
+                journal.queued().keySet().stream().filter(url -> !unfinished.containsKey(url)).forEach(index::seen);
+            }
+            crawler.crawl(startUrl, journal, page -> {
+                if (page.notModified) {
+                    count.incrementAndGet();
+                    index.unchanged(page.url, null, null, null);
+                    return null;
+                }
+                if (page.html == null) {
+                    index.failed(page.url);
+                    return null;
+                }
+                try {
+                    System.out.println("[" + count.incrementAndGet() + "/" + crawler.discovered() + "] 下载: " + page.url);
+                    saveDocument(page, outputPath, index);
+                } catch (Exception e) {
+                    index.failed(page.url);
+                    System.err.println("✗ 下载失败: " + e.getMessage());
+                }
+                return null;
+            });
+            if (count.get() == 0 && !crawler.resumed()) {
+                throw new RuntimeException("无法获取主页面内容");
+            }
+            // 有页面失败或达到上限时，没有出现的页面可能只是没有到达，不能删除
+            boolean deleteRemoved = DELETE_REMOVED && crawler.complete() && !index.hasFailures();
+            if (DELETE_REMOVED && !deleteRemoved) {
+                System.out.println("⚠ 爬取不完整（有页面失败或达到上限），不删除已移除页面的文件");
             }
+            index.finish(deleteRemoved);
+            System.out.println();
+            System.out.println(index.report());
         }
 
         System.out.println();
+        System.out.println("  " + crawler.pacer().metrics());
         System.out.println("╔══════════════════════════════════════════╗");
         System.out.println("✓ 下载完成！共生成 " + fileCount + " 个文档");
         System.out.println("  保存路径: " + outputPath.toAbsolutePath());
@@ -221,37 +287,68 @@ public class VSCodeDocumentDownloader {
     }
 
     /**
-     * 从主页面提取所有文档链接
+     * 创建从起始页面出发的爬虫：只跟随同一站点、起始路径之下、robots.txt 允许的文档链接；
+     * robots.txt 声明的 sitemap（没有声明时尝试 /sitemap.xml）中范围内的页面预先加入
+     * @param index 页面索引，不为null时对上次保存过的页面发送条件请求
+     */
+    private static DocCrawler newCrawler(String startUrl, PageIndex index) {
+        String scopePrefix = scopePrefix(startUrl);
+        RobotsTxt robots = USE_ROBOTS ? RobotsTxt.fetch(client, startUrl, USER_AGENT) : null;
+        DocCrawler crawler = new DocCrawler(url -> fetchPage(url, index),
+                VSCodeDocumentDownloader::extractDocumentLinks,
+                url -> url.startsWith(scopePrefix) && !NON_DOCUMENT.matcher(url).find() && !MediaTypes.isMediaUrl(url)
+                        && (robots == null || robots.isAllowed(url)),
+                DocCrawler.DEFAULT_THREADS);
+        if (robots != null && robots.crawlDelayMillis() >= 0) {
+            crawler.pacer().setCrawlDelay(startUrl, robots.crawlDelayMillis());
+            System.out.println("✓ robots.txt Crawl-delay: " + robots.crawlDelayMillis() + " 毫秒");
+        }
+        if (USE_SITEMAPS) {
+            crawler.seeds(seed -> {
+                List<String> sitemaps = robots != null && !robots.sitemaps().isEmpty()
+                        ? robots.sitemaps()
+                        : Collections.singletonList(resolveUrl("/sitemap.xml", startUrl));
+                SitemapReader reader = new SitemapReader(client, USER_AGENT);
+                for (String sitemap : sitemaps) {
+                    System.out.println("读取 sitemap: " + sitemap);
+                    reader.read(sitemap, seed);
+                }
+                System.out.println("✓ sitemap 中共有 " + reader.pages() + " 个页面");
+            });
+        }
+        return crawler;
+    }
+
+    /**
+     * 爬取范围：规范化的起始URL去掉查询参数和文件名后的部分，例如 https://code.visualstudio.com/docs
+     */
+    private static String scopePrefix(String startUrl) {
+        String canonical = UrlCanonicalizer.canonicalize(startUrl);
+        String prefix = (canonical != null ? canonical : startUrl).replaceAll("[?#].*$", "");
+        int slash = prefix.lastIndexOf('/');
+        if (slash > prefix.indexOf("://") + 2 && prefix.indexOf('.', slash) >= 0) {
+            prefix = prefix.substring(0, slash + 1);
+        }
+        return prefix;
+    }
+
+    /**
+     * 从页面提取所有文档链接（正文和侧边栏菜单中的链接）
      */
     private static Set<String> extractDocumentLinks(Document doc, String baseUrl) {
         Set<String> urls = new LinkedHashSet<>();
 
-        // 查找所有可能的文档链接
+        // 查找所有可能的文档链接，包括VS Code官方文档侧边栏菜单（.docs-nav、nav、.sidebar）中的链接
         Elements links = doc.select("a[href]");
 
         for (Element link : links) {
             String href = link.attr("href");
-            String text = link.text().trim();
 
             // 过滤文档链接
             if (isValidDocumentLink(href, baseUrl)) {
                 String absoluteUrl = resolveUrl(href, baseUrl);
-                if (!downloadedUrls.contains(absoluteUrl) && !absoluteUrl.equals(baseUrl)) {
-                    urls.add(absoluteUrl);
-                    downloadedUrls.add(absoluteUrl);
-                }
-            }
-        }
-
-        // 如果是VS Code官方文档，还可以从侧边栏菜单提取链接
-        Elements menuItems = doc.select(".docs-nav a[href], nav a[href], .sidebar a[href]");
-        for (Element item : menuItems) {
-            String href = item.attr("href");
-            if (isValidDocumentLink(href, baseUrl)) {
-                String absoluteUrl = resolveUrl(href, baseUrl);
-                if (!downloadedUrls.contains(absoluteUrl)) {
+                if (!absoluteUrl.equals(baseUrl)) {
                     urls.add(absoluteUrl);
-                    downloadedUrls.add(absoluteUrl);
                 }
             }
         }
@@ -260,14 +357,14 @@ public class VSCodeDocumentDownloader {
     }
 
     /**
-     * 从HTML中提取所有视频链接（MP4格式）
+     * 从页面中提取所有视频链接（MP4格式）
+     * 标签属性从已解析的DOM中读取（须在 extractContent 修改DOM之前调用），
+     * 脚本和源码中的地址由 MediaUrlScanner 单次扫描原始HTML得到
      */
-    private static Set<String> extractVideoLinks(String html, String pageUrl) {
+    private static Set<String> extractVideoLinks(Document doc, String html, String pageUrl) {
         Set<String> videoUrls = new LinkedHashSet<>();
         
         try {
-            Document doc = Jsoup.parse(html);
-            
             // 从video标签中提取src
             Elements videoTags = doc.select("video source[src], video[src]");
             for (Element videoTag : videoTags) {
@@ -288,16 +385,6 @@ public class VSCodeDocumentDownloader {
                 }
             }
             
-            // 从a标签中提取MP4链接
-            Elements links = doc.select("a[href*='.mp4'], a[href*='.MP4']");
-            for (Element link : links) {
-                String href = link.attr("href");
-                if (href != null && (href.toLowerCase().endsWith(".mp4") || href.contains(".mp4"))) {
-                    String absoluteUrl = resolveUrl(href, pageUrl);
-                    videoUrls.add(absoluteUrl);
-                }
-            }
-            
             // 从img标签的data-video属性中提取
             Elements imgs = doc.select("img[data-video]");
             for (Element img : imgs) {
@@ -308,16 +395,13 @@ public class VSCodeDocumentDownloader {
                 }
             }
             
-            // 从script中提取视频链接（JSON格式）
-            Elements scripts = doc.select("script");
-            for (Element script : scripts) {
-                String content = script.html();
-                extractVideoLinksFromJson(content, pageUrl, videoUrls);
+            // 单次扫描HTML源码：覆盖链接、属性、脚本中的JSON以及 /assets/ 下的相对路径
+            for (String url : MediaUrlScanner.scan(html, pageUrl)) {
+                if (MediaTypes.fromExtension(url) == MediaTypes.Type.MP4) {
+                    videoUrls.add(url);
+                }
             }
             
-            // 从HTML源直接提取所有/assets/下的MP4链接（补充正则表达式）
-            extractVideoLinksFromHtmlSource(html, pageUrl, videoUrls);
-            
         } catch (Exception e) {
             logger.warn("提取视频链接失败: " + pageUrl, e);
         }
@@ -325,131 +409,32 @@ public class VSCodeDocumentDownloader {
         return videoUrls;
     }
 
-    /**
-     * 从JSON数据中提取视频链接
-     */
-    private static void extractVideoLinksFromJson(String json, String pageUrl, Set<String> videoUrls) {
-        // 正则表达式匹配MP4链接
-        Pattern pattern = Pattern.compile("(https?://[^\"\\s]+\\.mp4[^\"\\s]*)");
-        var matcher = pattern.matcher(json);
-        while (matcher.find()) {
-            String url = matcher.group(1).replace("\\", "");
-            if (url.lastIndexOf("\"") > 0) {
-                url = url.substring(0, url.lastIndexOf("\""));
-            }
-            if (url.endsWith(".mp4")) {
-                videoUrls.add(url);
-            }
-        }
-    }
-
-    /**
-     * 直接从HTML源代码中提取所有MP4视频链接（包括assets路径）
-     */
-    private static void extractVideoLinksFromHtmlSource(String html, String pageUrl, Set<String> videoUrls) {
-        // 模式1：完整的同域名地址
-        String escapedHost;
-        try {
-            escapedHost = java.util.regex.Pattern.quote(new java.net.URL(pageUrl).getHost());
-        } catch (Exception e) {
-            escapedHost = "code\\.visualstudio\\.com";
-        }
-        Pattern fullUrlPattern = Pattern.compile("https?://" + escapedHost + "/[^\\s\"'<>]*\\.mp4");
-        var matcher = fullUrlPattern.matcher(html);
-        while (matcher.find()) {
-            String url = matcher.group(0);
-            if (!videoUrls.contains(url)) {
-                videoUrls.add(url);
-            }
-        }
-        
-        // 模式2：相对路径 /assets/...
-        Pattern assetPathPattern = Pattern.compile("/assets/[^\\s\"'<>]*\\.mp4");
-        matcher = assetPathPattern.matcher(html);
-        while (matcher.find()) {
-            String path = matcher.group(0);
-            try {
-                java.net.URL pageUrlObj = new java.net.URL(pageUrl);
-                String absoluteUrl = pageUrlObj.getProtocol() + "://" + pageUrlObj.getHost() + path;
-                if (!videoUrls.contains(absoluteUrl)) {
-                    videoUrls.add(absoluteUrl);
-                }
-            } catch (Exception e) {
-                logger.debug("无法解析相对路径: " + path);
-            }
-        }
-        
-        // 模式3：在属性中的 .mp4 (src=, data-src=, href= 等)
-        Pattern attrPattern = Pattern.compile("(?:src|data-src|href|data-href)\\s*=\\s*[\"']([^\"']*\\.mp4[^\"]*)[\"\']");
-        matcher = attrPattern.matcher(html);
-        while (matcher.find()) {
-            String urlOrPath = matcher.group(1);
-            if (urlOrPath.startsWith("http")) {
-                // 完整URL
-                if (!videoUrls.contains(urlOrPath)) {
-                    videoUrls.add(urlOrPath);
-                }
-            } else if (urlOrPath.startsWith("/")) {
-                // 相对路径
-                try {
-                    java.net.URL pageUrlObj = new java.net.URL(pageUrl);
-                    String absoluteUrl = pageUrlObj.getProtocol() + "://" + pageUrlObj.getHost() + urlOrPath;
-                    if (!videoUrls.contains(absoluteUrl)) {
-                        videoUrls.add(absoluteUrl);
-                    }
-                } catch (Exception e) {
-                    logger.debug("无法解析相对路径: " + urlOrPath);
-                }
-            }
-        }
-    }
-
     /**
      * 下载单个视频文件
      */
-    private static void downloadVideoFile(String videoUrl, String sourcePageUrl, Path outputDir) throws Exception {
-        System.out.println("  URL: " + videoUrl);
-        
+    private static void downloadVideoFile(MediaStore store, String videoUrl, String sourcePageUrl,
+                                          Path outputDir, String label) throws Exception {
         try {
-            Request request = new Request.Builder()
-                    .url(videoUrl)
-                    .header("User-Agent", USER_AGENT)
-                    .build();
-
-            Response response = client.newCall(request).execute();
-
-            if (!response.isSuccessful()) {
-                throw new RuntimeException("下载失败 (HTTP " + response.code() + ")");
+            // 确定文件保存路径：不同URL得到不同的文件
+            Path filePath = claimVideoPath(store, videoUrl, generateVideoFilePath(videoUrl, sourcePageUrl, outputDir));
+            if (filePath == null) {
+                System.out.println(label + " ✓ 已由其他页面下载，跳过: " + videoUrl);
+                return;
             }
-
-            // 确定文件保存路径
-            Path filePath = generateVideoFilePath(videoUrl, sourcePageUrl, outputDir);
             Files.createDirectories(filePath.getParent());
 
-            // 下载文件
-            try (InputStream is = response.body().byteStream();
-                 OutputStream os = Files.newOutputStream(filePath)) {
-                
-                byte[] buffer = new byte[8192];
-                int bytesRead;
-                long totalBytes = 0;
-                long fileSize = response.body().contentLength();
-                
-                while ((bytesRead = is.read(buffer)) != -1) {
-                    os.write(buffer, 0, bytesRead);
-                    totalBytes += bytesRead;
-                    
-                    // 显示下载进度
-                    if (fileSize > 0) {
-                        int progress = (int) ((totalBytes * 100) / fileSize);
-                        System.out.print("\r  进度: " + progress + "%");
-                    }
-                }
-                System.out.println("\r  ✓ 已保存: " + outputDir.relativize(filePath) + 
-                                 " (" + formatFileSize(totalBytes) + ")");
+            // 只有该文件确实是这个URL的内容时才跳过
+            if (store.holds(videoUrl, filePath)) {
+                System.out.println(label + " ✓ 已存在，跳过: " + outputDir.relativize(filePath));
+                return;
             }
 
-            response.close();
+            // 通过媒体库获取：已下载过的URL或相同ETag直接链接到已有内容，
+            // 否则下载（支持Range的服务器会分段并发下载，中断后可断点续传）
+            System.out.println(label + " 下载视频: " + videoUrl);
+            MediaStore.Result result = store.fetch(videoUrl, filePath);
+            System.out.println(label + (result.downloaded ? " ✓ 已保存: " : " ✓ 已链接到已有内容: ")
+                    + outputDir.relativize(filePath) + " (" + formatFileSize(result.size) + ")");
 
         } catch (Exception e) {
             logger.error("下载视频失败: " + videoUrl, e);
@@ -457,6 +442,30 @@ public class VSCodeDocumentDownloader {
         }
     }
 
+    /**
+     * 为视频URL分配保存路径：优先使用 preferred；它已分配给本次运行中的其他URL，
+     * 或已存在且不是该URL的内容时，在文件名后加URL的短哈希，例如 intro_1a2b3c4d.mp4
+     * @return 保存路径；同一URL已在本次运行中分配过该路径（其他页面正在或已经下载）时返回null
+     */
+    private static Path claimVideoPath(MediaStore store, String videoUrl, Path preferred) throws IOException {
+        String owner = videoTargets.putIfAbsent(preferred, videoUrl);
+        if (owner == null) {
+            if (!Files.exists(preferred) || store.holds(videoUrl, preferred)) {
+                return preferred;
+            }
+            videoTargets.remove(preferred, videoUrl);
+        } else if (owner.equals(videoUrl)) {
+            return null;
+        }
+        String name = preferred.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String hashed = (dot > 0 ? name.substring(0, dot) : name) + "_" + String.format("%08x", videoUrl.hashCode())
+                + (dot > 0 ? name.substring(dot) : "");
+        Path path = preferred.resolveSibling(hashed);
+        owner = videoTargets.putIfAbsent(path, videoUrl);
+        return owner == null || !owner.equals(videoUrl) ? path : null;
+    }
+
     /**
      * 生成视频文件保存路径
      */
@@ -478,17 +487,8 @@ public class VSCodeDocumentDownloader {
             Path pageDir = extractPageDirectory(sourcePageUrl, outputDir);
             Files.createDirectories(pageDir);
 
-            // 避免重名
-            Path filePath = pageDir.resolve(videoFileName);
-            int counter = 1;
-            while (Files.exists(filePath)) {
-                String nameWithoutExt = videoFileName.substring(0, videoFileName.lastIndexOf(".mp4"));
-                String newFilename = nameWithoutExt + "_" + counter + ".mp4";
-                filePath = pageDir.resolve(newFilename);
-                counter++;
-            }
-
-            return filePath;
+            // 路径固定，未完成的下载以 .part 文件续传；与其他URL重名时由 claimVideoPath 加短哈希
+            return pageDir.resolve(videoFileName);
 
         } catch (Exception e) {
             // 异常情况下保存到根目录
@@ -583,42 +583,43 @@ public class VSCodeDocumentDownloader {
     }
 
     /**
-     * 下载单个文档
+     * 从已解析的页面提取标题和正文并保存为txt（会修改传入的DOM），有页面索引时正文未变化的页面不再写入
      */
-    private static void downloadSingleDocument(String docUrl, Path outputDir) throws Exception {
-        String html = fetchPage(docUrl);
-        if (html == null) {
-            return;
-        }
-
-        Document doc = Jsoup.parse(html);
-
+    private static void saveDocument(DocCrawler.Page page, Path outputDir, PageIndex index) throws IOException {
         // 提取标题
-        String title = extractTitle(doc, docUrl);
+        String title = extractTitle(page.doc, page.url);
         System.out.println("  标题: " + title);
 
         // 提取内容
-        String content = extractContent(doc);
-
-        // 根据URL生成目录结构
-        Path filePath = generateFilePathFromUrl(docUrl, outputDir, title);
+        String content = extractContent(page.doc);
 
-        // 创建必要的目录
-        Files.createDirectories(filePath.getParent());
+        // 根据URL生成目录结构，已存在时原地覆盖
+        Path filePath = generateFilePathFromUrl(page.url, outputDir, title);
 
-        // 避免重名
-        int counter = 1;
-        while (Files.exists(filePath)) {
-            Path parent = filePath.getParent();
-            String filename = filePath.getFileName().toString();
-            String nameWithoutExt = filename.substring(0, filename.lastIndexOf(".txt"));
-            String newFilename = nameWithoutExt + "_" + counter + ".txt";
-            filePath = parent.resolve(newFilename);
-            counter++;
+        if (index != null) {
+            // 正文没有变化时不再写入，只更新验证器
+            String hash = PageIndex.hash(content);
+            if (INCREMENTAL && index.isUnchanged(page.url, hash)) {
+                index.unchanged(page.url, page.fetch.etag, page.fetch.lastModified, page.links);
+                System.out.println("  = 内容未变化");
+                return;
+            }
+            // 沿用上次的文件；不同页面生成了相同的文件名时加序号
+            filePath = index.fileFor(page.url, filePath);
+            Files.createDirectories(filePath.getParent());
+            Files.write(filePath, content.getBytes(StandardCharsets.UTF_8));
+            index.saved(page.url, page.fetch.etag, page.fetch.lastModified, hash, filePath, page.links);
+        } else {
+            // 没有页面索引时只在本次运行内避免重名：同一页面原地覆盖，不同页面生成了相同的文件名时加序号
+            Path preferred = filePath;
+            String name = preferred.getFileName().toString();
+            String base = name.endsWith(".txt") ? name.substring(0, name.length() - 4) : name;
+            for (int counter = 1; !page.url.equals(documentTargets.computeIfAbsent(filePath, key -> page.url)); counter++) {
+                filePath = preferred.resolveSibling(base + "_" + counter + ".txt");
+            }
+            Files.createDirectories(filePath.getParent());
+            Files.write(filePath, content.getBytes(StandardCharsets.UTF_8));
         }
-
-        // 保存文件
-        Files.write(filePath, content.getBytes(StandardCharsets.UTF_8));
         System.out.println("  ✓ 已保存: " + outputDir.relativize(filePath));
         fileCount++;
     }
@@ -785,28 +786,44 @@ public class VSCodeDocumentDownloader {
     }
 
     /**
-     * 获取网页内容
+     * 获取网页内容，按响应的字符集解码，超过 -Dmedia.html.maxPageBytes 的页面放弃
+     * 失败时返回状态码和 Retry-After，由爬虫决定是否重试
+     * 页面索引中有上次的 ETag / Last-Modified 时发送条件请求，未变化的页面服务器只返回304
      */
-    private static String fetchPage(String url) {
-        try {
-            Request request = new Request.Builder()
-                    .url(url)
-                    .header("User-Agent", USER_AGENT)
-                    .build();
-
-            Response response = client.newCall(request).execute();
+    private static DocCrawler.FetchResult fetchPage(String url, PageIndex index) {
+        Request.Builder builder = new Request.Builder()
+                .url(url)
+                .header("User-Agent", USER_AGENT);
+        PageIndex.Entry previous = INCREMENTAL && index != null ? index.validators(url) : null;
+        if (previous != null) {
+            if (previous.etag != null) {
+                builder.header("If-None-Match", previous.etag);
+            }
+            if (previous.lastModified != null) {
+                builder.header("If-Modified-Since", previous.lastModified);
+            }
+        }
 
+        try (Response response = client.newCall(builder.build()).execute()) {
+            if (response.code() == 304 && previous != null) {
+                return DocCrawler.FetchResult.notModified(previous.links);
+            }
             if (!response.isSuccessful()) {
                 logger.warn("获取页面失败: " + url + " (" + response.code() + ")");
-                return null;
+                return new DocCrawler.FetchResult(response.code(), null, response.header("Retry-After"));
             }
 
-            String body = response.body().string();
-            response.close();
-            return body;
+            ResponseBody body = response.body();
+            try (Reader reader = PageStream.open(body.byteStream(), response.header("Content-Type"), body.contentLength())) {
+                return DocCrawler.FetchResult.ok(response.code(), PageStream.readFully(reader),
+                        response.header("ETag"), response.header("Last-Modified"));
+            } catch (PageStream.PageTooLargeException e) {
+                logger.warn("跳过页面: " + url + " (" + e.getMessage() + ")");
+                return DocCrawler.FetchResult.failed(response.code());
+            }
         } catch (Exception e) {
             logger.error("获取页面异常: " + url, e);
-            return null;
+            return DocCrawler.FetchResult.failed(-1);
         }
     }
 
@@ -815,27 +832,8 @@ public class VSCodeDocumentDownloader {
      */
     private static String resolveUrl(String url, String baseUrl) {
         try {
-            if (url.startsWith("http://") || url.startsWith("https://")) {
-                return url;
-            }
-
-            if (url.startsWith("//")) {
-                String protocol = baseUrl.startsWith("https") ? "https:" : "http:";
-                return protocol + url;
-            }
-
-            java.net.URL baseUrlObj = new java.net.URL(baseUrl);
-
-            if (url.startsWith("/")) {
-                return baseUrlObj.getProtocol() + "://" + baseUrlObj.getHost() + url;
-            }
-
-            // 相对URL
-            String basePath = baseUrlObj.getPath();
-            if (!basePath.endsWith("/")) {
-                basePath = basePath.substring(0, basePath.lastIndexOf("/") + 1);
-            }
-            return baseUrlObj.getProtocol() + "://" + baseUrlObj.getHost() + basePath + url;
+            // 按URL规则解析，保留基准地址的端口，处理 //、/、../ 和查询参数开头的链接
+            return new java.net.URL(new java.net.URL(baseUrl), url.trim()).toString();
         } catch (Exception e) {
             return url;
         }
@@ -913,7 +911,7 @@ public class VSCodeDocumentDownloader {
         System.out.println("参数:");
         System.out.println("  <URL>        - VS Code文档URL，例如: https://code.visualstudio.com/docs");
         System.out.println("  [输出目录]   - 文档保存的目录，默认为 ./vscode-docs");
-        System.out.println("  [选项]       - 可选项: --videos 表示下载MP4视频而非文档");
+        System.out.println("  [选项]       - 可选项: --videos 表示下载MP4视频而非文档，--all 表示同时下载文档和视频");
         System.out.println();
         System.out.println("示例:");
         System.out.println("  # 下载文档");
@@ -922,5 +920,8 @@ public class VSCodeDocumentDownloader {
         System.out.println("  # 下载视频");
         System.out.println("  java VSCodeDocumentDownloader https://code.visualstudio.com/docs ./my-docs --videos");
         System.out.println();
+        System.out.println("  # 同时下载文档和视频（每个页面只抓取一次）");
+        System.out.println("  java VSCodeDocumentDownloader https://code.visualstudio.com/docs ./my-docs --all");
+        System.out.println();
     }
 }
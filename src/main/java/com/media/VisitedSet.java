@@ -0,0 +1,223 @@
+package com.media;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 已访问URL集合 - 只保存规范化URL的64位指纹（见 UrlCanonicalizer），每个URL占16到32字节（负载因子0.25到0.5），而不是上百字节的字符串
+ * 指纹存放在分段的开放寻址 long 表中：查找不加锁，插入只锁所在的分段；
+ * 可选的布隆过滤器层：精确表达到条目上限后，新的指纹写入固定大小的布隆过滤器，内存不再增长，
+ * 代价是极少数从未访问过的URL会被误判为已访问
+ */
+public final class VisitedSet {
+    // 可通过 -Dmedia.crawl.visitedMaxEntries / -Dmedia.crawl.bloomMB 调整
+    private static final long MAX_EXACT_ENTRIES = Long.getLong("media.crawl.visitedMaxEntries", 0); // 精确表的条目上限，0表示不限制（不使用布隆过滤器）
+    private static final int BLOOM_MB = Integer.getInteger("media.crawl.bloomMB", 32); // 布隆过滤器大小（MB）
+
+    private static final int SEGMENTS = 64; // 分段数，2的幂
+    private static final int INITIAL_SEGMENT_CAPACITY = 256; // 每个分段的初始槽位数，2的幂
+    private static final int BLOOM_HASHES = 7; // 布隆过滤器的哈希函数个数
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final long maxExactEntries;
+    private final Bloom bloom;
+
+    /**
+     * 一个分段：线性探测的 long 表，0 表示空槽位
+     */
+    private static final class Segment {
+        volatile long[] table = new long[INITIAL_SEGMENT_CAPACITY];
+        volatile int size;
+
+        boolean contains(long fingerprint) {
+            // 先读 volatile 的 size：之前插入时对槽位的写入都可见；之后并发插入的可能看不到，由 add 在锁内复查
+            if (size == 0) {
+                return false;
+            }
+            long[] slots = table;
+            int mask = slots.length - 1;
+            for (int i = spread(fingerprint) & mask; ; i = (i + 1) & mask) {
+                long slot = slots[i];
+                if (slot == fingerprint) {
+                    return true;
+                }
+                if (slot == 0) {
+                    return false;
+                }
+            }
+        }
+
+        /**
+         * 插入指纹，已存在时返回false；调用方持有分段锁
+         */
+        boolean insert(long fingerprint) {
+            long[] slots = table;
+            // 负载因子不超过 0.5，探测序列保持很短
+            if ((size + 1) * 2 > slots.length) {
+                slots = resize(slots);
+            }
+            int mask = slots.length - 1;
+            for (int i = spread(fingerprint) & mask; ; i = (i + 1) & mask) {
+                long slot = slots[i];
+                if (slot == fingerprint) {
+                    return false;
+                }
+                if (slot == 0) {
+                    slots[i] = fingerprint;
+                    size = size + 1;
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * 扩容：在新数组中重建后一次性替换，读者看到的要么是旧表要么是完整的新表
+         */
+        private long[] resize(long[] old) {
+            long[] slots = new long[old.length * 2];
+            int mask = slots.length - 1;
+            for (long fingerprint : old) {
+                if (fingerprint != 0) {
+                    int i = spread(fingerprint) & mask;
+                    while (slots[i] != 0) {
+                        i = (i + 1) & mask;
+                    }
+                    slots[i] = fingerprint;
+                }
+            }
+            table = slots;
+            return slots;
+        }
+    }
+
+    /**
+     * 布隆过滤器：位设置使用CAS，不加锁
+     */
+    private static final class Bloom {
+        final AtomicLongArray words;
+        final long bits;
+
+        Bloom(int megabytes) {
+            int words = Math.max(1, megabytes) * 1024 * 1024 / 8;
+            this.words = new AtomicLongArray(words);
+            this.bits = (long) words * 64;
+        }
+
+        boolean mightContain(long fingerprint) {
+            long h1 = fingerprint;
+            long h2 = Long.rotateLeft(fingerprint, 32) | 1;
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                long bit = Math.floorMod(h1 + i * h2, bits);
+                if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * 设置指纹对应的位，之前已全部设置过（可能已存在）时返回false
+         */
+        boolean put(long fingerprint) {
+            long h1 = fingerprint;
+            long h2 = Long.rotateLeft(fingerprint, 32) | 1;
+            boolean changed = false;
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                long bit = Math.floorMod(h1 + i * h2, bits);
+                int index = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long word;
+                while (((word = words.get(index)) & mask) == 0) {
+                    if (words.compareAndSet(index, word, word | mask)) {
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+            return changed;
+        }
+    }
+
+    public VisitedSet() {
+        this(MAX_EXACT_ENTRIES, BLOOM_MB);
+    }
+
+    /**
+     * @param maxExactEntries 精确表的条目上限，超过后写入布隆过滤器；0表示不限制
+     * @param bloomMegabytes 布隆过滤器大小（MB），仅在设置了上限时分配
+     */
+    public VisitedSet(long maxExactEntries, int bloomMegabytes) {
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+        this.maxExactEntries = maxExactEntries;
+        this.bloom = maxExactEntries > 0 ? new Bloom(bloomMegabytes) : null;
+    }
+
+    /**
+     * 指纹是否已在集合中（不加锁）
+     */
+    public boolean contains(long fingerprint) {
+        fingerprint = nonZero(fingerprint);
+        return segmentFor(fingerprint).contains(fingerprint) || (bloom != null && bloom.mightContain(fingerprint));
+    }
+
+    /**
+     * 加入指纹，已存在时返回false
+     */
+    public boolean add(long fingerprint) {
+        fingerprint = nonZero(fingerprint);
+        if (contains(fingerprint)) {
+            return false;
+        }
+        Segment segment = segmentFor(fingerprint);
+        synchronized (segment) {
+            if (bloom != null && size() >= maxExactEntries && !segment.contains(fingerprint)) {
+                return bloom.put(fingerprint);
+            }
+            return segment.insert(fingerprint);
+        }
+    }
+
+    /**
+     * 规范化URL并加入，已存在或无法规范化时返回false
+     */
+    public boolean add(String url) {
+        String canonical = UrlCanonicalizer.canonicalize(url);
+        return canonical != null && add(UrlCanonicalizer.fingerprint(canonical));
+    }
+
+    /**
+     * 精确表中的条目数（不包括写入布隆过滤器的）
+     */
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    /**
+     * 占用的内存（字节），包括布隆过滤器
+     */
+    public long memoryBytes() {
+        long bytes = bloom != null ? bloom.words.length() * 8L : 0;
+        for (Segment segment : segments) {
+            bytes += segment.table.length * 8L;
+        }
+        return bytes;
+    }
+
+    private Segment segmentFor(long fingerprint) {
+        // 分段用高位，分段内的槽位用低位
+        return segments[(int) (fingerprint >>> 58) & (SEGMENTS - 1)];
+    }
+
+    private static int spread(long fingerprint) {
+        return (int) (fingerprint ^ (fingerprint >>> 32));
+    }
+
+    private static long nonZero(long fingerprint) {
+        return fingerprint != 0 ? fingerprint : 1;
+    }
+}